@@ -0,0 +1,66 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares recognizing gestures one at a time with recognizing them as a batch. Scores are per gesture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchRecognitionBenchmark {
+    private static final int GESTURES = 256;
+
+    @Param({"1000", "5000"})
+    public int templates;
+
+    private Recognizer recognizer;
+    private List<Deque<Point>> gestures;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(2016);
+        recognizer = BenchmarkGestures.recognizerWith(templates, random);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        gestures = new ArrayList<>();
+        for (int i = 0; i < GESTURES; i++) {
+            gestures.add(BenchmarkGestures.synthetic(random, recorded));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GESTURES)
+    public void recognizeEach(Blackhole blackhole) {
+        for (Deque<Point> gesture : gestures) {
+            blackhole.consume(recognizer.recognize(gesture));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GESTURES)
+    public List<BestMatch> recognizeAll() {
+        return recognizer.recognizeAll(gestures);
+    }
+}
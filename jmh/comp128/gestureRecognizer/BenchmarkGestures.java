@@ -0,0 +1,98 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Gestures used by the benchmarks: the recorded gestures in res/ and synthetic strokes made from them or from
+ * random wandering paths.
+ */
+final class BenchmarkGestures {
+    private static final String[] RECORDED = {"arrowTemplate.xml", "arrowTest.xml", "circleTemplate.xml"};
+
+    private BenchmarkGestures() {
+    }
+
+    /**
+     * @return the gestures recorded in res/
+     */
+    static List<Deque<Point>> recorded() {
+        IOManager ioManager = new IOManager();
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (String fileName : RECORDED) {
+            gestures.add(ioManager.loadGesture(fileName));
+        }
+        return gestures;
+    }
+
+    /**
+     * Creates a synthetic gesture. Half are recorded gestures with jitter and a random rotation and scale, half are
+     * random wandering strokes.
+     * @param random source of randomness
+     * @param recorded the recorded gestures to vary
+     * @return a new gesture
+     */
+    static Deque<Point> synthetic(Random random, List<Deque<Point>> recorded) {
+        if (random.nextBoolean()) {
+            return vary(recorded.get(random.nextInt(recorded.size())), random);
+        }
+        Deque<Point> gesture = new ArrayDeque<>();
+        double x = 0;
+        double y = 0;
+        double heading = random.nextDouble()*2*Math.PI;
+        int n = 20 + random.nextInt(80);
+        for (int i = 0; i < n; i++) {
+            gesture.add(new Point(x, y));
+            heading += random.nextGaussian()*0.5;
+            x += Math.cos(heading)*(2 + random.nextDouble()*8);
+            y += Math.sin(heading)*(2 + random.nextDouble()*8);
+        }
+        return gesture;
+    }
+
+    private static Deque<Point> vary(Deque<Point> gesture, Random random) {
+        double angle = random.nextGaussian()*0.3;
+        double scale = 0.5 + random.nextDouble();
+        Deque<Point> varied = new ArrayDeque<>(gesture.size());
+        for (Point p : gesture) {
+            Point jitter = new Point(random.nextGaussian()*2, random.nextGaussian()*2);
+            varied.add(p.rotate(angle).scale(scale).add(jitter));
+        }
+        return varied;
+    }
+
+    /**
+     * Creates a recognizer holding the recorded gestures and enough synthetic ones to have the given number of templates
+     * @param templates the number of templates
+     * @param random source of randomness
+     * @return the recognizer
+     */
+    static Recognizer recognizerWith(int templates, Random random) {
+        Recognizer recognizer = new Recognizer();
+        List<Deque<Point>> gestures = templates(templates, random);
+        for (int i = 0; i < templates; i++) {
+            recognizer.addTemplate("template " + i, gestures.get(i));
+        }
+        return recognizer;
+    }
+
+    /**
+     * Creates the template gestures recognizerWith uses: the recorded gestures followed by synthetic ones
+     * @param templates the number of templates
+     * @param random source of randomness
+     * @return the template gestures, to be named "template " followed by their index
+     */
+    static List<Deque<Point>> templates(int templates, Random random) {
+        List<Deque<Point>> recorded = recorded();
+        List<Deque<Point>> gestures = new ArrayList<>(templates);
+        for (int i = 0; i < templates; i++) {
+            gestures.add(i < recorded.size() ? recorded.get(i) : synthetic(random, recorded));
+        }
+        return gestures;
+    }
+}
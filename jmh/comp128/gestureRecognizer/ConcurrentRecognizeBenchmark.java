@@ -0,0 +1,98 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks several threads recognizing gestures against a 1000 template library, on their own and while another
+ * thread keeps adding templates. Readers never lock, so their throughput should be about the same in both groups.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentRecognizeBenchmark {
+    private static final int TEMPLATES = 1000;
+    private static final int GESTURES = 64;
+    private static final long WORK_BETWEEN_ADDS = 50_000;
+
+    private Recognizer recognizer;
+    private List<Deque<Point>> newTemplates;
+    private int nextTemplate;
+
+    @State(Scope.Thread)
+    public static class Gestures {
+        private final List<Deque<Point>> gestures = new ArrayList<>();
+        private int next;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(Thread.currentThread().getId());
+            List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+            for (int i = 0; i < GESTURES; i++) {
+                gestures.add(BenchmarkGestures.synthetic(random, recorded));
+            }
+        }
+
+        Deque<Point> next() {
+            next = (next + 1) % GESTURES;
+            return gestures.get(next);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Random random = new Random(128);
+        recognizer = BenchmarkGestures.recognizerWith(TEMPLATES, random);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        newTemplates = new ArrayList<>();
+        for (int i = 0; i < GESTURES; i++) {
+            newTemplates.add(BenchmarkGestures.synthetic(random, recorded));
+        }
+        nextTemplate = 0;
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public BestMatch recognizeAlone(Gestures gestures) {
+        return recognizer.recognize(gestures.next());
+    }
+
+    @Benchmark
+    @Group("hotAdd")
+    @GroupThreads(3)
+    public BestMatch recognizeWhileAdding(Gestures gestures) {
+        return recognizer.recognize(gestures.next());
+    }
+
+    @Benchmark
+    @Group("hotAdd")
+    @GroupThreads(1)
+    public void addTemplate() {
+        Blackhole.consumeCPU(WORK_BETWEEN_ADDS);
+        nextTemplate = (nextTemplate + 1) % GESTURES;
+        recognizer.addTemplate("added " + nextTemplate, newTemplates.get(nextTemplate));
+    }
+}
@@ -0,0 +1,79 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the recognition engines against each other on the same template sets and gestures: $1 with its
+ * golden section search, $1 with dynamic time warping, $P point-cloud matching, and $Q point-cloud matching with
+ * lookup tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    private static final int GESTURES = 64;
+
+    @Param({"10", "100", "1000"})
+    public int templates;
+
+    @Param({"dollarOne", "timeWarping", "pointCloud", "quickPointCloud"})
+    public String engine;
+
+    private GestureRecognizer recognizer;
+    private List<Deque<Point>> gestures;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(128);
+        List<Deque<Point>> templateGestures = BenchmarkGestures.templates(templates, random);
+        if (engine.equals("dollarOne")) {
+            recognizer = new Recognizer();
+        }
+        else if (engine.equals("timeWarping")) {
+            Recognizer timeWarping = new Recognizer();
+            timeWarping.setMatcher(new DtwMatcher());
+            recognizer = timeWarping;
+        }
+        else if (engine.equals("pointCloud")) {
+            recognizer = new PointCloudRecognizer();
+        }
+        else {
+            recognizer = new QuickPointCloudRecognizer();
+        }
+        for (int i = 0; i < templates; i++) {
+            recognizer.addTemplate("template " + i, templateGestures.get(i));
+        }
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        gestures = new ArrayList<>();
+        for (int i = 0; i < GESTURES; i++) {
+            gestures.add(BenchmarkGestures.synthetic(random, recorded));
+        }
+    }
+
+    @Benchmark
+    public BestMatch recognize() {
+        next = (next + 1) % GESTURES;
+        return recognizer.recognize(gestures.get(next));
+    }
+}
@@ -0,0 +1,100 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading a gesture file held in memory: parsing the whole xml document as IOManager used to, streaming
+ * the xml into a deque with IOManager.loadGesture or into a reused coordinate buffer, and decoding the binary format
+ * into a deque with IOManager.loadBinaryGesture or into a reused coordinate buffer. The setup prints the size of
+ * the gesture in each format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GestureLoadingBenchmark {
+    private byte[] xml;
+    private byte[] binary;
+    private IOManager ioManager;
+    private PointBuffer points;
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("arrowTemplate.xml")) {
+            xml = in.readAllBytes();
+        }
+        ioManager = new IOManager();
+        points = new PointBuffer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ioManager.saveBinaryGesture(ioManager.loadGesture(new ByteArrayInputStream(xml)), "arrowTemplate", out);
+        binary = out.toByteArray();
+        System.out.println("arrowTemplate: " + xml.length + " bytes of xml, " + binary.length + " bytes of binary");
+    }
+
+    @Benchmark
+    public Deque<Point> loadDocument() throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setIgnoringComments(true);
+        documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+        documentBuilderFactory.setValidating(false);
+        Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        NodeList tags = document.getElementsByTagName("Point");
+        Deque<Point> gesture = new ArrayDeque<>();
+        for (int i = 0; i < tags.getLength(); i++) {
+            NamedNodeMap attributes = tags.item(i).getAttributes();
+            gesture.add(new Point(Double.parseDouble(attributes.getNamedItem("X").getNodeValue()),
+                    Double.parseDouble(attributes.getNamedItem("Y").getNodeValue())));
+        }
+        return gesture;
+    }
+
+    @Benchmark
+    public Deque<Point> loadGesture() {
+        return ioManager.loadGesture(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public PointBuffer readXml() throws XMLStreamException {
+        points.clear();
+        IOManager.readGesture(new ByteArrayInputStream(xml), points);
+        return points;
+    }
+
+    @Benchmark
+    public Deque<Point> loadBinaryGesture() {
+        return ioManager.loadBinaryGesture(new ByteArrayInputStream(binary));
+    }
+
+    @Benchmark
+    public PointBuffer readBinary() throws IOException {
+        points.clear();
+        BinaryGestureFormat.decode(ByteBuffer.wrap(binary), points);
+        return points;
+    }
+}
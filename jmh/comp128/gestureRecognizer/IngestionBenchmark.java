@@ -0,0 +1,130 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks adding a library of templates from a directory of xml files, a directory of binary files and an archive,
+ * on different numbers of threads. Scores are templates per second, so scaling with cores shows up directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+    private static final int TEMPLATES = 2000;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Path directory;
+    private Path xmlDirectory;
+    private Path binaryDirectory;
+    private Path archiveFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Random random = new Random(128);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        IOManager ioManager = new IOManager();
+        directory = Files.createTempDirectory("ingestionBenchmark");
+        xmlDirectory = Files.createDirectory(directory.resolve("xml"));
+        binaryDirectory = Files.createDirectory(directory.resolve("binary"));
+        List<String> names = new ArrayList<>();
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < TEMPLATES; i++) {
+            String name = String.format("template%05d", i);
+            Deque<Point> gesture = BenchmarkGestures.synthetic(random, recorded);
+            names.add(name);
+            gestures.add(gesture);
+            writeXml(gesture, name, xmlDirectory.resolve(name + ".xml"));
+            try (OutputStream out = Files.newOutputStream(binaryDirectory.resolve(name + IOManager.BINARY_EXTENSION))) {
+                ioManager.saveBinaryGesture(gesture, name, out);
+            }
+        }
+        archiveFile = directory.resolve("templates.archive");
+        ioManager.saveArchive(archiveFile, names, gestures);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEMPLATES)
+    public Recognizer xmlDirectory() throws IOException {
+        Recognizer recognizer = new Recognizer();
+        recognizer.addTemplates(xmlDirectory, threads);
+        return recognizer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEMPLATES)
+    public Recognizer binaryDirectory() throws IOException {
+        Recognizer recognizer = new Recognizer();
+        recognizer.addTemplates(binaryDirectory, threads);
+        return recognizer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEMPLATES)
+    public Recognizer archive() throws IOException {
+        Recognizer recognizer = new Recognizer();
+        recognizer.addTemplates(new IOManager().openArchive(archiveFile), threads);
+        return recognizer;
+    }
+
+    /**
+     * Writes a gesture as xml in the same form as IOManager.saveGesture, which can only write to the res folder
+     */
+    private static void writeXml(Deque<Point> gesture, String name, Path file) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element gestureTag = document.createElement("Gesture");
+        gestureTag.setAttribute("Name", name);
+        gestureTag.setAttribute("NumPts", Integer.toString(gesture.size()));
+        document.appendChild(gestureTag);
+        for (Point point : gesture) {
+            Element pointTag = document.createElement("Point");
+            pointTag.setAttribute("X", Double.toString(point.getX()));
+            pointTag.setAttribute("Y", Double.toString(point.getY()));
+            gestureTag.appendChild(pointTag);
+        }
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(file.toFile()));
+    }
+}
@@ -0,0 +1,80 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the individual stages of recognizing one gesture: resampling, the full processing pipeline (both the
+ * reference deque steps and the fused Normalizer), and the golden section search against a single template.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+    private Recognizer recognizer;
+    private Deque<Point> gesture;
+    private PointBuffer raw;
+    private Normalizer normalizer;
+    private ProcessedGesture processed;
+    private TemplateStore store;
+    private Matcher goldenSection;
+
+    @Setup
+    public void setup() {
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        recognizer = new Recognizer();
+        gesture = recorded.get(1);
+        raw = new PointBuffer();
+        raw.addAll(gesture);
+        normalizer = new Normalizer(64, 200, new Point(0, 0));
+        processed = new ProcessedGesture(64);
+
+        ProcessedGesture template = new ProcessedGesture(64);
+        PointBuffer templatePoints = new PointBuffer();
+        templatePoints.addAll(recorded.get(0));
+        normalizer.normalize(templatePoints.xs(), templatePoints.ys(), templatePoints.size(), template);
+        store = new TemplateStore(64).withTemplate("arrow", template.xs, template.ys);
+
+        normalizer.normalize(raw.xs(), raw.ys(), raw.size(), processed);
+        goldenSection = new GoldenSectionMatcher();
+    }
+
+    @Benchmark
+    public Deque<Point> resample() {
+        return recognizer.resample(gesture, 64);
+    }
+
+    @Benchmark
+    public Deque<Point> prepPointsReference() {
+        Deque<Point> resampled = recognizer.resample(gesture, 64);
+        Deque<Point> rotated = recognizer.rotateBy(resampled, -recognizer.indicativeAngle(resampled));
+        return recognizer.translateTo(recognizer.scaleTo(rotated, 200), new Point(0, 0));
+    }
+
+    @Benchmark
+    public ProcessedGesture prepPoints() {
+        normalizer.normalize(raw.xs(), raw.ys(), raw.size(), processed);
+        return processed;
+    }
+
+    @Benchmark
+    public double distanceAtBestAngle() {
+        return goldenSection.distance(processed, store, 0, Double.POSITIVE_INFINITY);
+    }
+}
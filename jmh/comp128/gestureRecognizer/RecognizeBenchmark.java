@@ -0,0 +1,78 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks recognizing a gesture against libraries of different sizes, through both the deque API and the
+ * allocation-free array API, with metrics recording off and on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecognizeBenchmark {
+    private static final int GESTURES = 64;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int templates;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private Recognizer recognizer;
+    private List<Deque<Point>> gestures;
+    private List<PointBuffer> gestureArrays;
+    private BestMatch match;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(128);
+        recognizer = BenchmarkGestures.recognizerWith(templates, random);
+        recognizer.setMetrics(metrics ? new RecognizerMetrics() : null);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        gestures = new ArrayList<>();
+        gestureArrays = new ArrayList<>();
+        for (int i = 0; i < GESTURES; i++) {
+            Deque<Point> gesture = BenchmarkGestures.synthetic(random, recorded);
+            gestures.add(gesture);
+            PointBuffer buffer = new PointBuffer();
+            buffer.addAll(gesture);
+            gestureArrays.add(buffer);
+        }
+        match = new BestMatch();
+    }
+
+    @Benchmark
+    public BestMatch recognize() {
+        next = (next + 1) % GESTURES;
+        return recognizer.recognize(gestures.get(next));
+    }
+
+    @Benchmark
+    public BestMatch recognizeArrays() {
+        next = (next + 1) % GESTURES;
+        PointBuffer gesture = gestureArrays.get(next);
+        recognizer.recognize(gesture.xs(), gesture.ys(), gesture.size(), match);
+        return match;
+    }
+}
@@ -0,0 +1,98 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks filling an empty recognizer with a template library: processing every original gesture with
+ * addTemplate, decoding and processing every gesture in a mapped archive, and restoring a snapshot of the
+ * processed templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"10000"})
+    public int templates;
+
+    private Path directory;
+    private List<String> names;
+    private List<Deque<Point>> gestures;
+    private Path archiveFile;
+    private Path snapshotFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(128);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        names = new ArrayList<>();
+        gestures = new ArrayList<>();
+        Recognizer recognizer = new Recognizer();
+        for (int i = 0; i < templates; i++) {
+            names.add("template " + i);
+            gestures.add(BenchmarkGestures.synthetic(random, recorded));
+            recognizer.addTemplate(names.get(i), gestures.get(i));
+        }
+        directory = Files.createTempDirectory("startupBenchmark");
+        archiveFile = directory.resolve("templates.archive");
+        new IOManager().saveArchive(archiveFile, names, gestures);
+        snapshotFile = directory.resolve("templates.snapshot");
+        recognizer.saveTemplateSnapshot(snapshotFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Recognizer addTemplate() {
+        Recognizer recognizer = new Recognizer();
+        for (int i = 0; i < templates; i++) {
+            recognizer.addTemplate(names.get(i), gestures.get(i));
+        }
+        return recognizer;
+    }
+
+    @Benchmark
+    public Recognizer addTemplatesFromArchive() throws IOException {
+        Recognizer recognizer = new Recognizer();
+        recognizer.addTemplates(new IOManager().openArchive(archiveFile));
+        return recognizer;
+    }
+
+    @Benchmark
+    public Recognizer loadTemplateSnapshot() throws IOException {
+        Recognizer recognizer = new Recognizer();
+        recognizer.loadTemplateSnapshot(snapshotFile);
+        return recognizer;
+    }
+}
@@ -0,0 +1,94 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks recognizing with the vantage-point tree at different numbers of candidates, where 0 is the full scan.
+ * Setup also reports how often the tree leads to the same template as the full scan (its recall), how much lower
+ * its score is on average, and how long the tree took to build, over a larger set of gestures than the benchmark
+ * cycles through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VantagePointBenchmark {
+    private static final int GESTURES = 64;
+    private static final int ACCURACY_GESTURES = 1000;
+
+    @Param({"1000", "10000", "100000"})
+    public int templates;
+
+    @Param({"0", "8", "32", "128"})
+    public int candidates;
+
+    private Recognizer recognizer;
+    private List<Deque<Point>> gestures;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(128);
+        recognizer = BenchmarkGestures.recognizerWith(templates, random);
+        List<Deque<Point>> recorded = BenchmarkGestures.recorded();
+        gestures = new ArrayList<>();
+        for (int i = 0; i < GESTURES; i++) {
+            gestures.add(BenchmarkGestures.synthetic(random, recorded));
+        }
+        if (candidates > 0) {
+            reportAccuracy(random, recorded);
+        }
+        recognizer.setVantagePointIndex(candidates);
+    }
+
+    private void reportAccuracy(Random random, List<Deque<Point>> recorded) {
+        List<Deque<Point>> accuracyGestures = new ArrayList<>();
+        for (int i = 0; i < ACCURACY_GESTURES; i++) {
+            accuracyGestures.add(BenchmarkGestures.synthetic(random, recorded));
+        }
+        List<BestMatch> exhaustive = new ArrayList<>();
+        for (Deque<Point> gesture : accuracyGestures) {
+            exhaustive.add(recognizer.recognize(gesture));
+        }
+        long start = System.nanoTime();
+        recognizer.setVantagePointIndex(candidates);
+        long built = System.nanoTime();
+        int agreed = 0;
+        double scoreLoss = 0;
+        for (int i = 0; i < ACCURACY_GESTURES; i++) {
+            BestMatch match = recognizer.recognize(accuracyGestures.get(i));
+            if (match.getTemplate() == exhaustive.get(i).getTemplate()) {
+                agreed++;
+            }
+            scoreLoss += exhaustive.get(i).getScore() - match.getScore();
+        }
+        System.out.printf("%nVantage-point tree with %d templates and %d candidates: built in %.1f ms, same template "
+                + "as the full scan for %.1f%% of gestures, mean score loss %.5f%n",
+                templates, candidates, (built - start)/1e6, 100.0*agreed/ACCURACY_GESTURES, scoreLoss/ACCURACY_GESTURES);
+    }
+
+    @Benchmark
+    public BestMatch recognize() {
+        next = (next + 1) % GESTURES;
+        return recognizer.recognize(gestures.get(next));
+    }
+}
@@ -7,6 +7,14 @@ public class BestMatch {
     private Template template;
     private double score;
 
+    /**
+     * creates an empty match with no template, to be filled in by
+     * {@link Recognizer#recognize(double[], double[], int, BestMatch)}
+     */
+    public BestMatch() {
+        this(null, 0);
+    }
+
     /**
      * creates a new match that contains a template, and the score the gesture recieved against it
      * @param template template that a gesture was compared to
@@ -17,6 +25,16 @@ public class BestMatch {
         this.score = score;
     }
 
+    /**
+     * Replaces the template and score so that one match object can be reused for many gestures
+     * @param template template that a gesture was compared to
+     * @param score the score the gesture got against this template
+     */
+    void set(Template template, double score) {
+        this.template = template;
+        this.score = score;
+    }
+
     /**
      * @return the template that was matched
      */
@@ -0,0 +1,211 @@
+package comp128.gestureRecognizer;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact binary encoding of one gesture. The layout is:
+ * <ul>
+ *     <li>the magic bytes "GSTR" and a version byte</li>
+ *     <li>a byte saying how the coordinates are encoded</li>
+ *     <li>the gesture name as a varint byte length followed by UTF-8 bytes</li>
+ *     <li>the number of points as a varint</li>
+ *     <li>the coordinates, interleaved x then y</li>
+ * </ul>
+ * When every coordinate is a whole number, which is the case for anything drawn with a mouse, each coordinate is
+ * stored as the zig-zag varint of its difference from the previous point's, so most points take 2 bytes. Otherwise
+ * the coordinates are stored as raw floats, or as raw doubles if a float can't hold them exactly, so decoding always
+ * gives back exactly the points that were encoded.
+ */
+final class BinaryGestureFormat {
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'R'};
+    private static final byte VERSION = 1;
+    static final byte VARINT_DELTAS = 0;
+    static final byte FLOATS = 1;
+    static final byte DOUBLES = 2;
+    private static final double MAX_INTEGER = 1L << 31;
+
+    private BinaryGestureFormat() {
+    }
+
+    /**
+     * Encodes a gesture
+     * @param name the gesture's name, or null for none
+     * @param xs x coordinates of the points
+     * @param ys y coordinates of the points
+     * @param count the number of points
+     * @return the encoded gesture
+     */
+    static byte[] encode(String name, double[] xs, double[] ys, int count) {
+        byte[] nameBytes = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+        byte encoding = encodingFor(xs, ys, count);
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 2 + 2*10 + nameBytes.length + 2*count*Math.max(10, Double.BYTES));
+        out.put(MAGIC).put(VERSION).put(encoding);
+        putVarint(out, nameBytes.length);
+        out.put(nameBytes);
+        putVarint(out, count);
+        if (encoding == VARINT_DELTAS) {
+            long previousX = 0;
+            long previousY = 0;
+            for (int i = 0; i < count; i++) {
+                long x = (long) xs[i];
+                long y = (long) ys[i];
+                putVarint(out, zigZag(x - previousX));
+                putVarint(out, zigZag(y - previousY));
+                previousX = x;
+                previousY = y;
+            }
+        }
+        else if (encoding == FLOATS) {
+            for (int i = 0; i < count; i++) {
+                out.putFloat((float) xs[i]).putFloat((float) ys[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                out.putDouble(xs[i]).putDouble(ys[i]);
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Decodes one gesture, leaving the buffer positioned just after it
+     * @param in the encoded gesture
+     * @param points buffer the points are added to
+     * @return the gesture's name
+     * @throws IOException if the bytes are not an encoded gesture
+     */
+    static String decode(ByteBuffer in, PointBuffer points) throws IOException {
+        try {
+            byte encoding = decodeHeader(in);
+            String name = decodeString(in);
+            int count = checkedLength(getVarint(in), in);
+            if (encoding == VARINT_DELTAS) {
+                long x = 0;
+                long y = 0;
+                for (int i = 0; i < count; i++) {
+                    x += unZigZag(getVarint(in));
+                    y += unZigZag(getVarint(in));
+                    points.add(x, y);
+                }
+            }
+            else if (encoding == FLOATS) {
+                for (int i = 0; i < count; i++) {
+                    points.add(in.getFloat(), in.getFloat());
+                }
+            }
+            else if (encoding == DOUBLES) {
+                for (int i = 0; i < count; i++) {
+                    points.add(in.getDouble(), in.getDouble());
+                }
+            }
+            else {
+                throw new IOException("Unknown coordinate encoding " + encoding);
+            }
+            return name;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Binary gesture is truncated", e);
+        }
+    }
+
+    /**
+     * Decodes just the name of a gesture, leaving the buffer positioned just after it
+     * @param in the encoded gesture
+     * @return the gesture's name
+     * @throws IOException if the bytes are not an encoded gesture
+     */
+    static String decodeName(ByteBuffer in) throws IOException {
+        try {
+            decodeHeader(in);
+            return decodeString(in);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Binary gesture is truncated", e);
+        }
+    }
+
+    /**
+     * Checks the magic bytes and version
+     * @return the coordinate encoding
+     */
+    private static byte decodeHeader(ByteBuffer in) throws IOException {
+        for (byte magic : MAGIC) {
+            if (in.get() != magic) {
+                throw new IOException("Not a binary gesture");
+            }
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary gesture version " + version);
+        }
+        return in.get();
+    }
+
+    private static String decodeString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[checkedLength(getVarint(in), in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Picks the smallest encoding that holds every coordinate exactly
+     */
+    static byte encodingFor(double[] xs, double[] ys, int count) {
+        byte encoding = VARINT_DELTAS;
+        for (int i = 0; i < count && encoding != DOUBLES; i++) {
+            encoding = (byte) Math.max(encoding, encodingFor(xs[i]));
+            encoding = (byte) Math.max(encoding, encodingFor(ys[i]));
+        }
+        return encoding;
+    }
+
+    private static byte encodingFor(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < MAX_INTEGER && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0)) {
+            return VARINT_DELTAS;
+        }
+        if ((float) value == value || Double.isNaN(value)) {
+            return FLOATS;
+        }
+        return DOUBLES;
+    }
+
+    private static int checkedLength(long length, ByteBuffer in) throws IOException {
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Binary gesture is truncated");
+        }
+        return (int) length;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in binary gesture");
+    }
+}
@@ -0,0 +1,104 @@
+package comp128.gestureRecognizer;
+
+import java.util.Arrays;
+
+/**
+ * Narrows down the templates a gesture has to be compared with in full. Every template is first ranked by its
+ * distance from the gesture at the coarsest level in TemplateStore.COARSE_SIZES, and only the closest are ranked
+ * again at the next level, and so on. The last level keeps the given fraction of the templates, and each coarser
+ * level keeps twice as many as the one after it.
+ * <p>
+ * The coarse distance is the squared distance between the coarse points taken as vectors, at the rotation
+ * between -45 and 45 degrees that brings them closest, which has a closed form like the Protractor. It only
+ * ranks templates, so the best template at full resolution is missed if it ranks too low at a coarse level.
+ */
+final class Cascade {
+    /** the fewest templates kept by the last level */
+    static final int MIN_CANDIDATES = 8;
+    private static final double SQRT_HALF = Math.sqrt(0.5);
+
+    private final double candidateFraction;
+
+    /**
+     * @param candidateFraction fraction of the templates kept by the last level, from 0 to 1
+     */
+    Cascade(double candidateFraction) {
+        if (!(candidateFraction > 0 && candidateFraction <= 1)) {
+            throw new IllegalArgumentException("Candidate fraction must be above 0 and at most 1 but was " + candidateFraction);
+        }
+        this.candidateFraction = candidateFraction;
+    }
+
+    /**
+     * @return fraction of the templates kept by the last level
+     */
+    double getCandidateFraction() {
+        return candidateFraction;
+    }
+
+    /**
+     * Finds the templates that rank closest to a gesture at every coarse level
+     * @param gesture the processed gesture. Its coarse points are filled in.
+     * @param store the store holding the processed templates
+     * @return the slots of the candidates, closest at the last level first, or null if every template would be
+     * kept anyway or the store doesn't keep its templates at the coarse levels
+     */
+    int[] candidates(ProcessedGesture gesture, TemplateStore store) {
+        int levels = TemplateStore.COARSE_SIZES.length;
+        int keep = Math.max(MIN_CANDIDATES, (int) Math.ceil(candidateFraction*store.liveCount()));
+        if ((long) keep << (levels - 1) >= store.liveCount() || !store.hasCoarseLevels()) {
+            return null;
+        }
+        int[] slots = null;
+        int count = store.size();
+        for (int level = 0; level < levels; level++) {
+            int m = TemplateStore.COARSE_SIZES[level];
+            double[] xs = gesture.coarseXs[level];
+            double[] ys = gesture.coarseYs[level];
+            TemplateStore.subsample(gesture.xs, gesture.ys, 0, gesture.size(), xs, ys, 0, m);
+            double gestureSquared = 0;
+            for (int i = 0; i < m; i++) {
+                gestureSquared += xs[i]*xs[i] + ys[i]*ys[i];
+            }
+            TopMatches top = new TopMatches(keep << (levels - 1 - level));
+            for (int i = 0; i < count; i++) {
+                int slot = slots == null ? i : slots[i];
+                if (slots == null && store.isRemoved(slot)) {
+                    continue;
+                }
+                top.offer(slot, distance(xs, ys, gestureSquared, store, level, slot));
+            }
+            slots = new int[top.size()];
+            count = top.drainSorted(slots, new double[slots.length]);
+            if (level < levels - 1) {
+                Arrays.sort(slots, 0, count); // the next level offers them in slot order, as TopMatches expects
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Calculates the squared distance between a gesture and a template at one coarse level, at the best rotation
+     * between -45 and 45 degrees
+     */
+    private static double distance(double[] xs, double[] ys, double gestureSquared, TemplateStore store, int level, int slot) {
+        int m = xs.length;
+        double[] templateXs = store.coarseXs(level);
+        double[] templateYs = store.coarseYs(level);
+        int offset = slot*m;
+        double a = 0;
+        double b = 0;
+        double templateSquared = 0;
+        for (int i = 0; i < m; i++) {
+            double tx = templateXs[offset + i];
+            double ty = templateYs[offset + i];
+            a += tx*xs[i] + ty*ys[i];
+            b += ty*xs[i] - tx*ys[i];
+            templateSquared += tx*tx + ty*ty;
+        }
+        // a*cos(theta) + b*sin(theta) peaks at the angle atan2(b, a). If that is outside the allowed range, the
+        // closer end of the range is best.
+        double alignment = a > 0 && Math.abs(b) <= a ? Math.sqrt(a*a + b*b) : (a + Math.abs(b))*SQRT_HALF;
+        return gestureSquared + templateSquared - 2*alignment;
+    }
+}
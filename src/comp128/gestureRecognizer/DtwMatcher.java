@@ -0,0 +1,177 @@
+package comp128.gestureRecognizer;
+
+/**
+ * A matcher that compares the processed gesture and template with dynamic time warping instead of point by point,
+ * so a part of the gesture drawn relatively longer or shorter than in the template can still line up with it. Each
+ * point may only be matched with points at most band places away in the other sequence (a Sakoe-Chiba band), and
+ * the distance is the smallest sum of matched point distances divided by the number of points. There is no rotation
+ * search: the gesture and templates are only aligned by their indicative angles.
+ * <p>
+ * Most templates are rejected by two lower bounds before the warping is computed:
+ * <ul>
+ *     <li>LB_Kim: the first points and the last points are always matched with each other.</li>
+ *     <li>LB_Keogh: each gesture point is matched with some template point within the band, so it is at least as
+ *     far from the template as from the box around those points. A Recognizer using this matcher has its store
+ *     work out the boxes for a band of TemplateStore.ENVELOPE_BAND points as templates are added, and they also
+ *     bound any narrower band. For a wider band, or a store without them, the boxes are found while comparing.</li>
+ * </ul>
+ * Apart from the scratch rows each thread keeps for the warping, a matcher holds no state, so it can be shared.
+ */
+public class DtwMatcher extends Matcher {
+    /** the band used by the default constructor, about a tenth of the 64 processed points */
+    public static final int DEFAULT_BAND = 6;
+
+    private final int band;
+    private final ThreadLocal<double[][]> rows = new ThreadLocal<>();
+
+    /**
+     * Creates a matcher with a band of DEFAULT_BAND points
+     */
+    public DtwMatcher() {
+        this(DEFAULT_BAND);
+    }
+
+    /**
+     * Creates a matcher
+     * @param band how many places apart two matched points can be, at least 0. 0 compares point by point.
+     */
+    public DtwMatcher(int band) {
+        if (band < 0) {
+            throw new IllegalArgumentException("Band must be at least 0 but got " + band);
+        }
+        this.band = band;
+    }
+
+    /**
+     * Calculates the dynamic time warping distance between the gesture and a template, giving up on the template as
+     * soon as a lower bound or every warping path so far is past the bound.
+     * @param gesture the processed gesture
+     * @param store the store holding the processed templates
+     * @param slot index of the template in the store
+     * @param bound distance the template has to beat
+     * @param counters where abandoned templates are counted, or null
+     * @return the average distance between matched points along the best warping path, or a value greater than
+     * bound if the template cannot beat it
+     */
+    @Override
+    double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound, ScanCounters counters) {
+        double[] xs = gesture.xs;
+        double[] ys = gesture.ys;
+        double[] templateXs = store.xs();
+        double[] templateYs = store.ys();
+        int offset = store.offset(slot);
+        int n = xs.length;
+        double limit = bound*n;
+
+        double kim = distance(xs[0], ys[0], templateXs[offset], templateYs[offset])
+                + distance(xs[n-1], ys[n-1], templateXs[offset + n - 1], templateYs[offset + n - 1]);
+        if (kim > limit) {
+            abandoned(counters);
+            return kim/n;
+        }
+
+        boolean stored = band <= TemplateStore.ENVELOPE_BAND && store.hasEnvelopes();
+        double[] lowerXs = stored ? store.lowerXs() : null;
+        double[] upperXs = stored ? store.upperXs() : null;
+        double[] lowerYs = stored ? store.lowerYs() : null;
+        double[] upperYs = stored ? store.upperYs() : null;
+        double keogh = 0;
+        for (int i = 0; i < n; i++) {
+            double dx;
+            double dy;
+            if (stored) {
+                dx = outside(xs[i], lowerXs[offset + i], upperXs[offset + i]);
+                dy = outside(ys[i], lowerYs[offset + i], upperYs[offset + i]);
+            }
+            else {
+                double minX = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int j = Math.max(0, i - band); j <= Math.min(n - 1, i + band); j++) {
+                    minX = Math.min(minX, templateXs[offset + j]);
+                    maxX = Math.max(maxX, templateXs[offset + j]);
+                    minY = Math.min(minY, templateYs[offset + j]);
+                    maxY = Math.max(maxY, templateYs[offset + j]);
+                }
+                dx = outside(xs[i], minX, maxX);
+                dy = outside(ys[i], minY, maxY);
+            }
+            keogh += Math.sqrt(dx*dx + dy*dy);
+            if (keogh > limit) {
+                abandoned(counters);
+                return keogh/n;
+            }
+        }
+
+        double[][] rows = this.rows.get();
+        if (rows == null || rows[0].length != n) {
+            rows = new double[][] {new double[n], new double[n]};
+            this.rows.set(rows);
+        }
+        double[] previous = rows[0];
+        double[] current = rows[1];
+        int hi = Math.min(n - 1, band);
+        previous[0] = distance(xs[0], ys[0], templateXs[offset], templateYs[offset]);
+        for (int j = 1; j <= hi; j++) {
+            previous[j] = previous[j-1] + distance(xs[0], ys[0], templateXs[offset + j], templateYs[offset + j]);
+        }
+        if (hi + 1 < n) {
+            previous[hi + 1] = Double.POSITIVE_INFINITY;
+        }
+        for (int i = 1; i < n; i++) {
+            int lo = Math.max(0, i - band);
+            hi = Math.min(n - 1, i + band);
+            double rowMin = Double.POSITIVE_INFINITY;
+            for (int j = lo; j <= hi; j++) {
+                double best = previous[j];
+                if (j > lo) {
+                    best = Math.min(best, Math.min(previous[j-1], current[j-1]));
+                }
+                else if (j > 0) {
+                    best = Math.min(best, previous[j-1]);
+                }
+                current[j] = best + distance(xs[i], ys[i], templateXs[offset + j], templateYs[offset + j]);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (hi + 1 < n) {
+                current[hi + 1] = Double.POSITIVE_INFINITY;
+            }
+            if (rowMin > limit) {
+                abandoned(counters);
+                return rowMin/n;
+            }
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[n-1]/n;
+    }
+
+    private static void abandoned(ScanCounters counters) {
+        if (counters != null) {
+            counters.earlyAbandons++;
+        }
+    }
+
+    /**
+     * Scores a distance the same way as the golden section search, relative to half the diagonal of the square
+     */
+    @Override
+    double score(double distance, double scaleSize) {
+        return 1 - distance/(0.5*Math.sqrt(2*scaleSize*scaleSize));
+    }
+
+    /**
+     * @return how far a coordinate is outside the range [lower, upper], or 0 if it is inside
+     */
+    private static double outside(double coordinate, double lower, double upper) {
+        return Math.max(0, Math.max(coordinate - upper, lower - coordinate));
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+}
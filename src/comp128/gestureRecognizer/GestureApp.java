@@ -5,8 +5,11 @@ import Graphics.Point;
 import Graphics.ui.Button;
 import Graphics.ui.TextField;
 
+import javax.swing.SwingUtilities;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 /**
@@ -14,6 +17,7 @@ import java.util.function.Consumer;
  * Created by bjackson on 10/29/2016.
  */
 public class GestureApp {
+    private static final long PROVISIONAL_MATCH_INTERVAL = 100; // milliseconds
 
     private CanvasWindow canvas;
     private Recognizer recognizer;
@@ -23,6 +27,14 @@ public class GestureApp {
     private TextField templateNameField;
     private GraphicsText matchLabel;
     private Deque<Point> path;
+    private RecognitionSession session;
+    private boolean drawing;
+    /** recognizes provisional matches off the event thread, one at a time */
+    private final ExecutorService provisionalExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Provisional recognition");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Creates a new Gesture App, initialises a recogniser object, ioManager, path etc.
@@ -64,18 +76,28 @@ public class GestureApp {
 
         canvas.onMouseDown(event -> {
             removeAllNonUIGraphicsObjects();
+            path.clear();
             path.add(event.getPosition());
+            drawing = true;
+            session = recognizer.startSession(match -> SwingUtilities.invokeLater(() -> displayProvisionalMatch(match)),
+                    PROVISIONAL_MATCH_INTERVAL, provisionalExecutor);
+            session.addPoint(event.getPosition());
         });
         canvas.onDrag(event -> {
             Line line = new Line(path.getLast().getX(), path.getLast().getY(), event.getPosition().getX(), event.getPosition().getY());
             canvas.add(line);
             path.add(event.getPosition());
+            session.addPoint(event.getPosition());
         });
         canvas.onMouseUp(event -> recogniseGesture()); 
     }
 
+    /**
+     * Finishes the session that has been recognizing the gesture while it was drawn
+     */
     private void recogniseGesture() {
-        BestMatch match = recognizer.recognize(path);
+        drawing = false;
+        BestMatch match = session.finish();
         if (match == null) {
             matchLabel.setText("No Match Found");
         } else {
@@ -88,6 +110,15 @@ public class GestureApp {
         matchLabel.setText(matchText);
     }
 
+    /**
+     * Shows a provisional match, unless the gesture it was recognized from has been finished since
+     */
+    private void displayProvisionalMatch(BestMatch match) {
+        if (match != null && drawing) {
+            matchLabel.setText(match.getTemplate().getName() + "?");
+        }
+    }
+
     /**
      * Clears the canvas, but preserves all the UI objects
      */
@@ -0,0 +1,271 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Many gestures packed into one file that is memory-mapped when opened, so gestures are decoded straight from the
+ * mapped pages without opening a file or making a system call per gesture. The layout is:
+ * <ul>
+ *     <li>a header: the magic bytes "GSTA", a version int, the number of gestures, a reserved int and the position
+ *     of the index</li>
+ *     <li>the gesture records, each in the BinaryGestureFormat</li>
+ *     <li>the index: the position of each record followed by the position just after the last one</li>
+ * </ul>
+ * Gestures are decoded lazily, by index or by name. Looking up a name the first time reads the name of every record.
+ * An archive can be read from many threads at once.
+ */
+public class GestureArchive {
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'A'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private final MappedByteBuffer buffer;
+    private final long[] offsets;
+    private Map<String, Integer> indexByName;
+
+    private GestureArchive(MappedByteBuffer buffer, long[] offsets) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Maps an archive file into memory and reads its index. The file is closed again straight away; the mapping
+     * stays valid until the archive is garbage collected.
+     * @param file the archive file
+     * @return the archive
+     * @throws IOException if the file can't be read or is not an archive
+     */
+    static GestureArchive open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Gesture archive is larger than 2GB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE) {
+            throw new IOException("Not a gesture archive");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Not a gesture archive");
+            }
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported gesture archive version " + version);
+        }
+        int count = buffer.getInt(8);
+        long indexPosition = buffer.getLong(16);
+        if (count < 0 || indexPosition < HEADER_SIZE || indexPosition + (count + 1L)*Long.BYTES > buffer.limit()) {
+            throw new IOException("Gesture archive index is corrupt");
+        }
+        long[] offsets = new long[count + 1];
+        for (int i = 0; i <= count; i++) {
+            offsets[i] = buffer.getLong((int) indexPosition + i*Long.BYTES);
+            if (offsets[i] < HEADER_SIZE || offsets[i] > indexPosition || (i > 0 && offsets[i] < offsets[i - 1])) {
+                throw new IOException("Gesture archive index is corrupt");
+            }
+        }
+        return new GestureArchive(buffer, offsets);
+    }
+
+    /**
+     * @return the number of gestures in the archive
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Decodes one gesture
+     * @param index index of the gesture in the archive
+     * @return the gesture's points
+     * @throws IOException if the gesture's record is corrupt
+     */
+    public Deque<Point> getGesture(int index) throws IOException {
+        PointBuffer points = new PointBuffer();
+        read(index, points);
+        Deque<Point> gesture = new ArrayDeque<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            gesture.add(new Point(points.xs()[i], points.ys()[i]));
+        }
+        return gesture;
+    }
+
+    /**
+     * Decodes the first gesture with the given name
+     * @param name name of the gesture
+     * @return the gesture's points, or null if there is no gesture with that name
+     * @throws IOException if a record is corrupt
+     */
+    public Deque<Point> getGesture(String name) throws IOException {
+        int index = indexOf(name);
+        return index < 0 ? null : getGesture(index);
+    }
+
+    /**
+     * @param index index of a gesture in the archive
+     * @return the gesture's name
+     * @throws IOException if the gesture's record is corrupt
+     */
+    public String getName(int index) throws IOException {
+        return BinaryGestureFormat.decodeName(record(index));
+    }
+
+    /**
+     * @param name name of a gesture
+     * @return the index of the first gesture with that name, or -1 if there is none
+     * @throws IOException if a record is corrupt
+     */
+    public synchronized int indexOf(String name) throws IOException {
+        if (indexByName == null) {
+            Map<String, Integer> names = new HashMap<>();
+            for (int i = 0; i < size(); i++) {
+                names.putIfAbsent(getName(i), i);
+            }
+            indexByName = names;
+        }
+        return indexByName.getOrDefault(name, -1);
+    }
+
+    /**
+     * Decodes one gesture into a buffer
+     * @param index index of the gesture in the archive
+     * @param points buffer the points are added to
+     * @return the gesture's name
+     * @throws IOException if the gesture's record is corrupt
+     */
+    String read(int index, PointBuffer points) throws IOException {
+        return BinaryGestureFormat.decode(record(index), points);
+    }
+
+    private ByteBuffer record(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Gesture " + index + " of an archive with " + size());
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.limit((int) offsets[index + 1]).position((int) offsets[index]);
+        return record;
+    }
+
+    /**
+     * Writes gestures to a new archive file one at a time. Records are streamed to a temporary file next to the
+     * archive as they are added. Finishing writes the index and header and then moves the temporary file over the
+     * archive, so the archive is never left half written. Closing a writer that was not finished deletes the
+     * temporary file and leaves any archive already there alone.
+     */
+    static class Writer implements Closeable {
+        private final Path file;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private long[] offsets = new long[16];
+        private int count;
+        private long position = HEADER_SIZE;
+        private boolean finished;
+
+        /**
+         * Creates the temporary file the archive is written to
+         * @param file the archive file, which is replaced once the writer is finished
+         * @throws IOException if the temporary file can't be created
+         */
+        Writer(Path file) throws IOException {
+            this.file = file;
+            Path directory = file.toAbsolutePath().getParent();
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            }
+            catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            channel.position(HEADER_SIZE);
+            out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        }
+
+        /**
+         * Appends a gesture to the archive
+         * @param name name of the gesture
+         * @param points the gesture's points
+         * @throws IOException if the gesture can't be written
+         */
+        void add(String name, PointBuffer points) throws IOException {
+            byte[] record = BinaryGestureFormat.encode(name, points.xs(), points.ys(), points.size());
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length*2);
+            }
+            offsets[count++] = position;
+            out.write(record);
+            position += record.length;
+        }
+
+        /**
+         * Writes the index and header, closes the temporary file and moves it over the archive file
+         * @throws IOException if they can't be written or the file can't be moved, in which case the archive file is
+         * left as it was
+         */
+        void finish() throws IOException {
+            offsets[count] = position;
+            ByteBuffer index = ByteBuffer.allocate((count + 1)*Long.BYTES);
+            index.asLongBuffer().put(offsets, 0, count + 1);
+            out.write(index.array());
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(VERSION).putInt(count).putInt(0).putLong(position);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            out.close();
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finished = true;
+        }
+
+        /**
+         * Closes the temporary file, deleting it unless the writer was finished
+         * @throws IOException if it can't be closed or deleted
+         */
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            try {
+                out.close();
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
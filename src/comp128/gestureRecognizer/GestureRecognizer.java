@@ -0,0 +1,32 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.Deque;
+
+/**
+ * A recognition engine: templates are added by name and gestures are matched against them. Recognizer
+ * implements the $1 algorithm, PointCloudRecognizer $P and QuickPointCloudRecognizer $Q, so the engines can be
+ * swapped for each other and compared on the same templates. Scores are only comparable within one engine.
+ */
+public interface GestureRecognizer {
+    /**
+     * Create a template to use for matching
+     * @param name of the template
+     * @param points in the template gesture's path
+     */
+    void addTemplate(String name, Deque<Point> points);
+
+    /**
+     * Finds the template closest to a gesture
+     * @param originalPoints the deque of points that needs to be recognised
+     * @return a BestMatch containing the template and score that the gesture is closest to, or null if there are
+     * no templates
+     */
+    BestMatch recognize(Deque<Point> originalPoints);
+
+    /**
+     * @return the number of templates
+     */
+    int getTemplateCount();
+}
@@ -0,0 +1,210 @@
+package comp128.gestureRecognizer;
+
+/**
+ * The matcher from the $1 paper. Uses a golden section search over rotations of the gesture between
+ * -45 and 45 degrees to find the rotation with the smallest average distance to the template.
+ * <p>
+ * The search always starts from the same bracket and each step only chooses which side to keep, so the angles it
+ * can probe form a binary tree that is the same for every gesture and template. The cosine and sine of every
+ * angle in that tree are worked out once, and the search walks the tree instead of calling Math.cos and Math.sin
+ * for each probe.
+ */
+public class GoldenSectionMatcher extends Matcher {
+    private static final double THETA_A = -Math.toRadians(45);
+    private static final double THETA_B = Math.toRadians(45);
+    private static final double DELTA_THETA = Math.toRadians(2);
+    private static final double PHI = 0.5*(-1.0 + Math.sqrt(5.0)); // golden ratio
+
+    /**
+     * Cosine and sine of the two probe angles at each node of the probe tree, the first probe of node n at 2n and
+     * the second at 2n + 1. Node 1 is the starting bracket, and node n keeps the lower part of its bracket in node
+     * 2n and the upper part in node 2n + 1.
+     */
+    private static final double[] PROBE_COS;
+    private static final double[] PROBE_SIN;
+
+    static {
+        double x1 = PHI*THETA_A + (1-PHI)*THETA_B;
+        double x2 = (1 - PHI)*THETA_A + PHI*THETA_B;
+        int depth = probeTreeDepth(THETA_A, THETA_B, x1, x2);
+        PROBE_COS = new double[4 << depth];
+        PROBE_SIN = new double[4 << depth];
+        buildProbeTree(1, THETA_A, THETA_B, x1, x2);
+    }
+
+    /**
+     * Uses a golden section search to calculate rotation that minimizes the distance between the gesture and a template.
+     * Gives up on the template as soon as it provably cannot beat the bound:
+     * <ul>
+     *     <li>Rotating the gesture around its centroid does not change each point's distance from the centroid, so the
+     *     average difference between those distances and the template points' distances from the centroid is a lower
+     *     bound on the distance at every angle.</li>
+     *     <li>Rotating the gesture by an angle d moves each point by at most its distance from the centroid times d, so
+     *     no distance inside a bracket of width w is smaller than a probe's distance minus the gesture's mean radius
+     *     times w.</li>
+     *     <li>Each probe stops summing once its average passes the bound.</li>
+     * </ul>
+     * A probe that stopped early is finished if neither probe beat the bound and the bracket can't be ruled out, since
+     * a partial sum can only be compared with a distance under the bound. So the search visits the same angles and
+     * returns the same distance as a search without a bound whenever that distance could beat the bound.
+     * @param gesture the processed gesture
+     * @param store the store holding the processed templates
+     * @param slot index of the template in the store
+     * @param bound distance the template has to beat
+     * @param counters where iterations and abandoned templates are counted, or null
+     * @return best distance, or a value greater than bound if the template cannot beat it
+     */
+    @Override
+    double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound, ScanCounters counters){
+        double lowerBound = radialLowerBound(gesture, store, slot);
+        if (lowerBound > bound){
+            count(counters, 0, true);
+            return lowerBound;
+        }
+        double thetaA = THETA_A;
+        double thetaB = THETA_B;
+        int node = 1;
+        double x1 = PHI*thetaA + (1-PHI)*thetaB;
+        double f1 = distanceAtAngle(gesture, store, slot, 2*node, bound);
+        boolean exact1 = f1 <= bound;
+        double x2 = (1 - PHI)*thetaA + PHI*thetaB;
+        double f2 = distanceAtAngle(gesture, store, slot, 2*node + 1, bound);
+        boolean exact2 = f2 <= bound;
+        int iterations = 0;
+        while(Math.abs(thetaB-thetaA) > DELTA_THETA){
+            iterations++;
+            if (f1 > bound && f2 > bound && !(exact1 && exact2)){
+                if (Math.max(lowerBound, Math.min(f1, f2) - gesture.meanRadius*(thetaB-thetaA)) > bound){
+                    count(counters, iterations, true);
+                    return Math.min(f1, f2);
+                }
+                // A partial sum can only be compared with a distance under the bound, so finish it
+                if (!exact1){
+                    f1 = distanceAtAngle(gesture, store, slot, 2*node, Double.POSITIVE_INFINITY);
+                    exact1 = true;
+                }
+                if (!exact2){
+                    f2 = distanceAtAngle(gesture, store, slot, 2*node + 1, Double.POSITIVE_INFINITY);
+                    exact2 = true;
+                }
+            }
+            if (f1 < f2){
+                thetaB = x2;
+                x2 = x1;
+                f2 = f1;
+                exact2 = exact1;
+                x1 = PHI*thetaA + (1-PHI)*thetaB;
+                node = 2*node;
+                f1 = distanceAtAngle(gesture, store, slot, 2*node, bound);
+                exact1 = f1 <= bound;
+            }
+            else{
+                thetaA = x1;
+                x1 = x2;
+                f1 = f2;
+                exact1 = exact2;
+                x2 = (1-PHI)*thetaA + PHI*thetaB;
+                node = 2*node + 1;
+                f2 = distanceAtAngle(gesture, store, slot, 2*node + 1, bound);
+                exact2 = f2 <= bound;
+            }
+        }
+        count(counters, iterations, false);
+        return Math.min(f1, f2);
+    }
+
+    private static void count(ScanCounters counters, int iterations, boolean abandoned) {
+        if (counters != null) {
+            counters.goldenSectionIterations += iterations;
+            if (abandoned) {
+                counters.earlyAbandons++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of steps the search takes from a bracket and its probes, the most over every way it can go
+     */
+    private static int probeTreeDepth(double thetaA, double thetaB, double x1, double x2) {
+        if (!(Math.abs(thetaB - thetaA) > DELTA_THETA)) {
+            return 0;
+        }
+        return 1 + Math.max(probeTreeDepth(thetaA, x2, PHI*thetaA + (1-PHI)*x2, x1),
+                probeTreeDepth(x1, thetaB, x2, (1-PHI)*x1 + PHI*thetaB));
+    }
+
+    /**
+     * Fills in the probes of a node and every node below it, working out the angles exactly as the search does
+     */
+    private static void buildProbeTree(int node, double thetaA, double thetaB, double x1, double x2) {
+        PROBE_COS[2*node] = Math.cos(x1);
+        PROBE_SIN[2*node] = Math.sin(x1);
+        PROBE_COS[2*node + 1] = Math.cos(x2);
+        PROBE_SIN[2*node + 1] = Math.sin(x2);
+        if (Math.abs(thetaB - thetaA) > DELTA_THETA) {
+            buildProbeTree(2*node, thetaA, x2, PHI*thetaA + (1-PHI)*x2, x1);
+            buildProbeTree(2*node + 1, x1, thetaB, x2, (1-PHI)*x1 + PHI*thetaB);
+        }
+    }
+
+    /**
+     * Calculates a lower bound on the distance between the gesture and a template at any rotation, from how far
+     * each point is from the centroid. Template radii are measured from the origin, which the gesture's centroid
+     * is translated to, so the bound is loosened by however far the centroid ended up from the origin.
+     */
+    private double radialLowerBound(ProcessedGesture gesture, TemplateStore store, int slot){
+        double[] radii = gesture.radii;
+        double[] templateRadii = store.radii();
+        int offset = store.offset(slot);
+        double difference = 0;
+        for (int i = 0; i < radii.length; i++) {
+            difference += Math.abs(templateRadii[offset + i] - radii[i]);
+        }
+        return difference/radii.length - Math.sqrt(gesture.centroidX*gesture.centroidX + gesture.centroidY*gesture.centroidY);
+    }
+
+    /**
+     * Calculates the average distance between the gesture rotated by a probe angle around its centroid and a
+     * template in the template store. Each point is rotated as it is compared, so nothing is allocated.
+     * Stops as soon as the running average is known to be greater than the bound.
+     * @param gesture the processed gesture
+     * @param store the store holding the processed templates
+     * @param slot index of the template in the store
+     * @param probe index of the angle to rotate the gesture by in PROBE_COS and PROBE_SIN
+     * @param bound distance above which the exact result is not needed
+     * @return the average distance between the rotated gesture and the template, or the partial average
+     * (a value greater than bound and no greater than the exact distance) if it stopped early
+     */
+    private double distanceAtAngle(ProcessedGesture gesture, TemplateStore store, int slot, int probe, double bound){
+        double cos = PROBE_COS[probe];
+        double sin = PROBE_SIN[probe];
+        double[] xs = gesture.xs;
+        double[] ys = gesture.ys;
+        double centroidX = gesture.centroidX;
+        double centroidY = gesture.centroidY;
+        double[] templateXs = store.xs();
+        double[] templateYs = store.ys();
+        int offset = store.offset(slot);
+        double limit = bound*xs.length;
+        double distance = 0;
+        for (int i = 0; i < xs.length; i++) {
+            double dx = xs[i] - centroidX;
+            double dy = ys[i] - centroidY;
+            double differenceX = templateXs[offset + i] - (dx*cos - dy*sin + centroidX);
+            double differenceY = templateYs[offset + i] - (dx*sin + dy*cos + centroidY);
+            distance += Math.sqrt(differenceX*differenceX + differenceY*differenceY);
+            if (distance > limit) {
+                return distance/xs.length;
+            }
+        }
+        return distance/xs.length;
+    }
+
+    /**
+     * Scores a distance relative to half the diagonal of the scaling square, as in the $1 paper
+     */
+    @Override
+    double score(double distance, double scaleSize) {
+        return 1 - (2*distance/Math.sqrt(2* Math.pow(scaleSize,2)));
+    }
+}
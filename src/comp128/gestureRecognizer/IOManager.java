@@ -6,15 +6,31 @@ import org.w3c.dom.*;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -22,6 +38,9 @@ import java.util.Deque;
  * Created by bjackson on 10/31/2016.
  */
 public class IOManager {
+    /** File extension of gestures saved in the binary format */
+    public static final String BINARY_EXTENSION = ".gesture";
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
 
     public IOManager(){
     }
@@ -32,28 +51,13 @@ public class IOManager {
      * @return Queue of points contained in the gesture
      */
     public Deque<Point> loadGesture(String fileName){
-        try {
-            String path = getClass().getClassLoader().getResource(fileName).getPath();
-            path = path.replace("%20", " ");
-            File file = new File(path);
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setIgnoringComments(true);
-            documentBuilderFactory.setIgnoringElementContentWhitespace(true);
-            documentBuilderFactory.setValidating(false);
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.parse(file);
-
-            NodeList tags = document.getElementsByTagName("Point");
-
-            Deque<Point> gesture = new ArrayDeque<>();
-
-            for(int i = 0; i < tags.getLength(); i++){
-                Node node = tags.item(i);
-                NamedNodeMap attributes = node.getAttributes();
-                Point point = new Point(Double.parseDouble(attributes.getNamedItem("X").getNodeValue()), Double.parseDouble(attributes.getNamedItem("Y").getNodeValue()));
-                gesture.add(point);
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            if (in == null) {
+                throw new FileNotFoundException("No gesture file named " + fileName);
             }
-            return gesture;
+            PointBuffer points = new PointBuffer();
+            readGesture(in, points);
+            return toDeque(points);
         }
         catch (Exception e){
             System.out.println("ERROR reading gesture file:");
@@ -62,6 +66,75 @@ public class IOManager {
         }
     }
 
+    /**
+     * Loads a gesture in the xml format from a stream, e.g. a file inside a jar. The stream is not closed.
+     * @param in stream holding the xml
+     * @return Queue of points contained in the gesture
+     */
+    public Deque<Point> loadGesture(InputStream in){
+        try {
+            PointBuffer points = new PointBuffer();
+            readGesture(in, points);
+            return toDeque(points);
+        }
+        catch (Exception e){
+            System.out.println("ERROR reading gesture file:");
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Streams the X and Y attributes of every Point element in a gesture xml file into a buffer, without building
+     * a document or any Point objects.
+     * @param in stream holding the xml. It is not closed.
+     * @param points buffer the points are added to
+     * @return the Name attribute of the Gesture element, or null if there is none
+     * @throws XMLStreamException if the xml is malformed or a Point is missing a coordinate
+     */
+    static String readGesture(InputStream in, PointBuffer points) throws XMLStreamException {
+        // The reader closes its input at the end of the document, which would close e.g. a zip entry's whole stream
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new FilterInputStream(in) {
+            @Override
+            public void close() {
+            }
+        });
+        try {
+            String name = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("Point".equals(reader.getLocalName())) {
+                    points.add(coordinate(reader, "X"), coordinate(reader, "Y"));
+                }
+                else if ("Gesture".equals(reader.getLocalName()) && name == null) {
+                    name = reader.getAttributeValue(null, "Name");
+                }
+            }
+            return name;
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static double coordinate(XMLStreamReader reader, String name) throws XMLStreamException {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            throw new XMLStreamException("Point is missing its " + name + " attribute", reader.getLocation());
+        }
+        return Double.parseDouble(value);
+    }
+
+    private static Deque<Point> toDeque(PointBuffer points){
+        Deque<Point> gesture = new ArrayDeque<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            gesture.add(new Point(points.xs()[i], points.ys()[i]));
+        }
+        return gesture;
+    }
+
     /**
      * Saves a gesture to an xml file.
      * @param gesture Queue of gesture points
@@ -109,4 +182,220 @@ public class IOManager {
         }
     }
 
+    /**
+     * Loads a gesture in the binary format from a file in the res folder
+     * @param fileName Name of a file in the res folder (e.g. arrow.gesture)
+     * @return Queue of points contained in the gesture
+     */
+    public Deque<Point> loadBinaryGesture(String fileName){
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            if (in == null) {
+                throw new FileNotFoundException("No gesture file named " + fileName);
+            }
+            return loadBinaryGesture(in);
+        }
+        catch (IOException e){
+            System.out.println("ERROR reading gesture file:");
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads a gesture in the binary format from a stream. Reads the stream to its end but does not close it.
+     * @param in stream holding the gesture
+     * @return Queue of points contained in the gesture
+     */
+    public Deque<Point> loadBinaryGesture(InputStream in){
+        try {
+            PointBuffer points = new PointBuffer();
+            BinaryGestureFormat.decode(ByteBuffer.wrap(in.readAllBytes()), points);
+            return toDeque(points);
+        }
+        catch (IOException e){
+            System.out.println("ERROR reading gesture file:");
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves a gesture in the binary format, which stores whole-number coordinates as small differences from the
+     * previous point and is much smaller and faster to load than xml. The stream is not closed.
+     * @param gesture Queue of gesture points
+     * @param gestureName The name of the gesture
+     * @param out stream to write the gesture to
+     */
+    public void saveBinaryGesture(Deque<Point> gesture, String gestureName, OutputStream out){
+        try {
+            PointBuffer points = new PointBuffer(gesture.size());
+            points.addAll(gesture);
+            out.write(BinaryGestureFormat.encode(gestureName, points.xs(), points.ys(), points.size()));
+            out.flush();
+        }
+        catch (IOException e){
+            System.out.println("ERROR saving gesture file:");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts every xml gesture file in a directory to the binary format. Each file keeps its name with the .xml
+     * extension replaced by .gesture, and keeps the gesture name from its Gesture element. Files that can't be
+     * converted are reported and skipped.
+     * @param xmlDirectory the directory holding the xml files
+     * @param binaryDirectory the directory to write binary files to. It is created if needed.
+     * @return the number of files converted
+     */
+    public int convertToBinary(Path xmlDirectory, Path binaryDirectory){
+        int converted = 0;
+        PointBuffer points = new PointBuffer();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(xmlDirectory, "*.xml")) {
+            Files.createDirectories(binaryDirectory);
+            for (Path xmlFile : files) {
+                String fileName = xmlFile.getFileName().toString();
+                Path binaryFile = binaryDirectory.resolve(fileName.substring(0, fileName.length() - ".xml".length()) + BINARY_EXTENSION);
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFile))) {
+                    points.clear();
+                    String name = readGesture(in, points);
+                    Files.write(binaryFile, BinaryGestureFormat.encode(name, points.xs(), points.ys(), points.size()));
+                    converted++;
+                }
+                catch (IOException | XMLStreamException e){
+                    System.out.println("ERROR converting gesture file " + xmlFile + ":");
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+        catch (IOException e){
+            System.out.println("ERROR converting gesture files:");
+            System.out.println(e.getMessage());
+        }
+        return converted;
+    }
+
+    /**
+     * Opens a gesture archive, mapping it into memory so its gestures can be decoded without opening a file each
+     * @param file the archive file
+     * @return the archive, or null if it can't be opened
+     */
+    public GestureArchive openArchive(Path file){
+        try {
+            return GestureArchive.open(file);
+        }
+        catch (IOException e){
+            System.out.println("ERROR opening gesture archive:");
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves gestures to a single archive file. If it can't be written, any archive file already there is left as it
+     * was.
+     * @param file the archive file, which is replaced if it exists
+     * @param gestureNames the name of each gesture
+     * @param gestures the gestures, in the same order as their names
+     */
+    public void saveArchive(Path file, List<String> gestureNames, List<Deque<Point>> gestures){
+        try (GestureArchive.Writer writer = new GestureArchive.Writer(file)) {
+            PointBuffer points = new PointBuffer();
+            for (int i = 0; i < gestures.size(); i++) {
+                points.clear();
+                points.addAll(gestures.get(i));
+                writer.add(gestureNames.get(i), points);
+            }
+            writer.finish();
+        }
+        catch (IOException e){
+            System.out.println("ERROR saving gesture archive:");
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Packs every xml gesture file in a directory into a single archive file, in file name order. Each gesture keeps
+     * the name from its Gesture element. Files that can't be read or parsed are reported and skipped. If the archive
+     * can't be written, any archive file already there is left as it was.
+     * @param xmlDirectory the directory holding the xml files
+     * @param file the archive file, which is replaced if it exists
+     * @return the number of gestures in the archive, or 0 if it couldn't be written
+     */
+    public int convertToArchive(Path xmlDirectory, Path file){
+        int converted = 0;
+        try (Stream<Path> listing = Files.list(xmlDirectory)) {
+            List<Path> xmlFiles = listing.filter(path -> path.getFileName().toString().endsWith(".xml")).sorted().collect(Collectors.toList());
+            try (GestureArchive.Writer writer = new GestureArchive.Writer(file)) {
+                PointBuffer points = new PointBuffer();
+                for (Path xmlFile : xmlFiles) {
+                    String name;
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(xmlFile))) {
+                        points.clear();
+                        name = readGesture(in, points);
+                    }
+                    catch (XMLStreamException | IOException e){
+                        System.out.println("ERROR converting gesture file " + xmlFile + ":");
+                        System.out.println(e.getMessage());
+                        continue;
+                    }
+                    writer.add(name, points);
+                    converted++;
+                }
+                writer.finish();
+            }
+        }
+        catch (IOException e){
+            System.out.println("ERROR saving gesture archive:");
+            System.out.println(e.getMessage());
+            converted = 0;
+        }
+        return converted;
+    }
+
+    /**
+     * Lists the gesture files in a directory: xml files and files in the binary format, in file name order
+     * @param directory the directory to list
+     * @return the gesture files
+     * @throws IOException if the directory can't be listed
+     */
+    static List<Path> gestureFiles(Path directory) throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            return listing.filter(path -> {
+                String fileName = path.getFileName().toString();
+                return (fileName.endsWith(".xml") || fileName.endsWith(BINARY_EXTENSION)) && Files.isRegularFile(path);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads a gesture file in either format into a buffer
+     * @param file an xml file or a file in the binary format
+     * @param points buffer the points are added to
+     * @return the name of the file without its extension, which is the name GestureApp gives templates it loads
+     * @throws IOException if the file can't be read or parsed
+     */
+    static String readGestureFile(Path file, PointBuffer points) throws IOException {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(BINARY_EXTENSION)) {
+            BinaryGestureFormat.decode(ByteBuffer.wrap(Files.readAllBytes(file)), points);
+            return fileName.substring(0, fileName.length() - BINARY_EXTENSION.length());
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            readGesture(in, points);
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Can't parse " + file + ": " + e.getMessage(), e);
+        }
+        int extension = fileName.lastIndexOf('.');
+        return extension < 0 ? fileName : fileName.substring(0, extension);
+    }
+
+    private static XMLInputFactory newXmlInputFactory(){
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
 }
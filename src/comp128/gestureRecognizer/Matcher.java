@@ -0,0 +1,44 @@
+package comp128.gestureRecognizer;
+
+/**
+ * A strategy for measuring how far a processed gesture is from a processed template. The recognizer
+ * asks its matcher for the distance to every template and reports the closest one as a BestMatch.
+ * <p>
+ * Matchers work directly on the recognizer's processed points, which are not part of the public API, so only
+ * the matchers in this package can be used: GoldenSectionMatcher, ProtractorMatcher and DtwMatcher.
+ */
+public abstract class Matcher {
+
+    Matcher() {
+    }
+
+    /**
+     * Calculates the distance between a processed gesture and a template in the template store. Once the
+     * distance is known to be greater than the bound, a matcher may stop early and return any value greater
+     * than the bound, so the bound should be the distance of the best template found so far.
+     * @param gesture the processed gesture
+     * @param store the store holding the processed templates
+     * @param slot index of the template in the store
+     * @param bound distance the template has to beat, or Double.POSITIVE_INFINITY for the exact distance
+     * @param counters where to count the work done for RecognizerMetrics, or null if metrics are off
+     * @return the distance between the gesture and the template, where smaller is a closer match, or a
+     * value greater than bound if the template cannot beat it
+     */
+    abstract double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound, ScanCounters counters);
+
+    /**
+     * Calculates the distance between a processed gesture and a template without counting the work done
+     * @see #distance(ProcessedGesture, TemplateStore, int, double, ScanCounters)
+     */
+    final double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound) {
+        return distance(gesture, store, slot, bound, null);
+    }
+
+    /**
+     * Converts a distance returned by this matcher into a score between 0 and 1, where 1 is a perfect match
+     * @param distance the distance between a gesture and a template
+     * @param scaleSize the size of the square the gesture and templates were scaled to
+     * @return the score
+     */
+    abstract double score(double distance, double scaleSize);
+}
@@ -0,0 +1,289 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recognizer to recognize 2D gestures made of several strokes with the $N algorithm (Anthony and Wobbrock 2010).
+ * When a template is added, its strokes are joined into one unistroke for every order they could be drawn in and
+ * every direction each could be drawn in, and each of those unistrokes is processed like a $1 template. A gesture
+ * is joined in the order it was drawn and matched against the unistrokes like in Recognizer, so it is recognized
+ * however its strokes were ordered and directed.
+ * <p>
+ * A template with k strokes has k! 2^k unistrokes, so only templates of up to MAX_STROKES strokes are accepted.
+ * Unistrokes that come out identical, such as both directions of a dot, are only stored once. While recognizing,
+ * unistrokes that don't start off in about the same direction as the gesture are skipped without running the
+ * rotation search, which rejects most of them. If none start off in about the same direction, all of them are
+ * compared instead, so a gesture is always matched with some template.
+ * <p>
+ * All the unistrokes of a template are added to the library in one step, along with their start directions, so a
+ * gesture recognized while another thread adds a template is compared with either none or every ordering of it.
+ */
+public class MultistrokeRecognizer implements GestureRecognizer {
+    /** the most strokes a template can have, giving up to 3840 unistrokes */
+    public static final int MAX_STROKES = 5;
+    private static final int RESAMPLE_SIZE = 64;
+    private static final double SCALE_SIZE = 200;
+    /** the start direction is measured from the first processed point to this one */
+    private static final int START_INDEX = RESAMPLE_SIZE/8;
+    /** cosine of 30 degrees, the most a unistroke's start direction can differ from a gesture's to be compared */
+    private static final double MIN_START_COS = Math.cos(Math.toRadians(30));
+
+    private volatile Library library = new Library(new TemplateStore(RESAMPLE_SIZE), new double[16], new double[16], 0);
+    private final Object writeLock = new Object();
+    private final Normalizer normalizer = new Normalizer(RESAMPLE_SIZE, SCALE_SIZE, new Point(0, 0));
+    private final Matcher matcher = new GoldenSectionMatcher();
+    private final ThreadLocal<ProcessedGesture> scratch = ThreadLocal.withInitial(() -> new ProcessedGesture(RESAMPLE_SIZE));
+
+    /**
+     * The processed unistrokes along with the unit vector each one starts off in, by slot, and the number of
+     * templates they were made from. A unistroke's start vector is written before the library that holds it is
+     * published, and the slots of unistrokes already published are never written again, so startXs and startYs can
+     * be grown in place and handed on while recognize reads them.
+     */
+    private static final class Library {
+        final TemplateStore store;
+        final double[] startXs;
+        final double[] startYs;
+        final int templateCount;
+
+        Library(TemplateStore store, double[] startXs, double[] startYs, int templateCount) {
+            this.store = store;
+            this.startXs = startXs;
+            this.startYs = startYs;
+            this.templateCount = templateCount;
+        }
+    }
+
+    /**
+     * Constructs a recognizer object
+     */
+    public MultistrokeRecognizer(){
+    }
+
+    /**
+     * Create a template with a single stroke
+     * @param name of the template
+     * @param points in the template gesture's path
+     */
+    @Override
+    public void addTemplate(String name, Deque<Point> points){
+        addTemplate(name, List.of(points));
+    }
+
+    /**
+     * Create a template to use for matching from the strokes it is drawn with. All of its unistrokes are processed
+     * first and then published together.
+     * @param name of the template
+     * @param strokes the points of each stroke, in any order and direction
+     */
+    public void addTemplate(String name, List<Deque<Point>> strokes){
+        if (strokes.isEmpty() || strokes.size() > MAX_STROKES) {
+            throw new IllegalArgumentException("Templates need 1 to " + MAX_STROKES + " strokes but got " + strokes.size());
+        }
+        List<PointBuffer> buffers = new ArrayList<>();
+        for (Deque<Point> stroke : strokes) {
+            PointBuffer buffer = new PointBuffer();
+            buffer.addAll(stroke);
+            buffers.add(buffer);
+        }
+        int strokeCount = buffers.size();
+        int[] order = new int[strokeCount];
+        for (int i = 0; i < strokeCount; i++) {
+            order[i] = i;
+        }
+        ProcessedGesture gesture = new ProcessedGesture(RESAMPLE_SIZE);
+        List<double[]> unistrokes = new ArrayList<>();
+        Map<Integer, List<Integer>> unistrokesByHash = new HashMap<>();
+        int[] swaps = new int[strokeCount];
+        int swapIndex = 0;
+        while (true) {
+            for (int reversed = 0; reversed < 1 << strokeCount; reversed++) {
+                join(buffers, order, reversed, gesture.raw);
+                normalizer.normalize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), gesture);
+                addUnlessSeen(gesture, unistrokes, unistrokesByHash);
+            }
+            // Heap's algorithm: each step swaps two strokes to reach the next order
+            while (swapIndex < strokeCount && swaps[swapIndex] >= swapIndex) {
+                swaps[swapIndex] = 0;
+                swapIndex++;
+            }
+            if (swapIndex == strokeCount) {
+                break;
+            }
+            int other = swapIndex % 2 == 0 ? 0 : swaps[swapIndex];
+            int swapped = order[other];
+            order[other] = order[swapIndex];
+            order[swapIndex] = swapped;
+            swaps[swapIndex]++;
+            swapIndex = 0;
+        }
+
+        String[] names = new String[unistrokes.size()];
+        Arrays.fill(names, name);
+        double[] newXs = new double[unistrokes.size()*RESAMPLE_SIZE];
+        double[] newYs = new double[unistrokes.size()*RESAMPLE_SIZE];
+        for (int u = 0; u < unistrokes.size(); u++) {
+            System.arraycopy(unistrokes.get(u), 0, newXs, u*RESAMPLE_SIZE, RESAMPLE_SIZE);
+            System.arraycopy(unistrokes.get(u), RESAMPLE_SIZE, newYs, u*RESAMPLE_SIZE, RESAMPLE_SIZE);
+        }
+        synchronized (writeLock) {
+            Library current = library;
+            int size = current.store.size();
+            double[] startXs = current.startXs;
+            double[] startYs = current.startYs;
+            if (size + names.length > startXs.length) {
+                int capacity = Math.max(size + names.length, 2*startXs.length);
+                startXs = Arrays.copyOf(startXs, capacity);
+                startYs = Arrays.copyOf(startYs, capacity);
+            }
+            for (int u = 0; u < names.length; u++) {
+                double[] unistroke = unistrokes.get(u);
+                startXs[size + u] = unistroke[2*RESAMPLE_SIZE];
+                startYs[size + u] = unistroke[2*RESAMPLE_SIZE + 1];
+            }
+            library = new Library(current.store.withTemplates(names, newXs, newYs), startXs, startYs,
+                    current.templateCount + 1);
+        }
+    }
+
+    /**
+     * @return the number of templates, however many unistrokes each has
+     */
+    @Override
+    public int getTemplateCount(){
+        return library.templateCount;
+    }
+
+    /**
+     * @return the number of unistrokes stored for all the templates
+     */
+    int getUnistrokeCount(){
+        return library.store.size();
+    }
+
+    /**
+     * Recognizes a gesture with a single stroke
+     * @param originalPoints the deque of points that needs to be recognised
+     * @return a BestMatch containing the template and score that the gesture is closest to, or null if there are no
+     * templates
+     */
+    @Override
+    public BestMatch recognize(Deque<Point> originalPoints){
+        return recognize(List.of(originalPoints));
+    }
+
+    /**
+     * Uses the $N algorithm to find the template closest to a gesture made of several strokes
+     * @param strokes the points of each stroke, in the order they were drawn
+     * @return a BestMatch containing the template and score that the gesture is closest to, or null if there are no
+     * templates
+     */
+    public BestMatch recognize(List<Deque<Point>> strokes){
+        Library library = this.library;
+        TemplateStore store = library.store;
+        if (store.size() == 0 || strokes.isEmpty()) {
+            return null;
+        }
+        ProcessedGesture gesture = scratch.get();
+        gesture.raw.clear();
+        for (Deque<Point> stroke : strokes) {
+            gesture.raw.addAll(stroke);
+        }
+        normalizer.normalize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), gesture);
+        double startX = startX(gesture);
+        double startY = startY(gesture);
+
+        double minDistance = Double.POSITIVE_INFINITY;
+        int closestSlot = -1;
+        // the second pass, without the start direction filter, only runs if the first rejected every unistroke
+        for (int pass = 0; pass < 2 && closestSlot < 0; pass++) {
+            for (int slot = 0; slot < store.size(); slot++) {
+                if (pass == 0 && startX*library.startXs[slot] + startY*library.startYs[slot] < MIN_START_COS) {
+                    continue;
+                }
+                double distance = matcher.distance(gesture, store, slot, minDistance);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closestSlot = slot;
+                }
+            }
+        }
+        return new BestMatch(store.get(closestSlot), matcher.score(minDistance, SCALE_SIZE));
+    }
+
+    /**
+     * Joins strokes end to end into one path
+     * @param strokes the points of each stroke
+     * @param order the order to join the strokes in
+     * @param reversed bit i is set if stroke i is joined last point first
+     * @param joined receives the joined path
+     */
+    private static void join(List<PointBuffer> strokes, int[] order, int reversed, PointBuffer joined) {
+        joined.clear();
+        for (int stroke : order) {
+            PointBuffer points = strokes.get(stroke);
+            double[] xs = points.xs();
+            double[] ys = points.ys();
+            if ((reversed & 1 << stroke) == 0) {
+                for (int i = 0; i < points.size(); i++) {
+                    joined.add(xs[i], ys[i]);
+                }
+            }
+            else {
+                for (int i = points.size() - 1; i >= 0; i--) {
+                    joined.add(xs[i], ys[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a processed unistroke unless an identical one has already been kept for the same template. Each kept
+     * unistroke is packed as its x coordinates, its y coordinates and then its start vector.
+     */
+    private static void addUnlessSeen(ProcessedGesture gesture, List<double[]> unistrokes, Map<Integer, List<Integer>> unistrokesByHash) {
+        int hash = 31*Arrays.hashCode(gesture.xs) + Arrays.hashCode(gesture.ys);
+        List<Integer> sameHash = unistrokesByHash.computeIfAbsent(hash, h -> new ArrayList<>());
+        for (int index : sameHash) {
+            double[] seen = unistrokes.get(index);
+            if (Arrays.equals(seen, 0, RESAMPLE_SIZE, gesture.xs, 0, RESAMPLE_SIZE)
+                    && Arrays.equals(seen, RESAMPLE_SIZE, 2*RESAMPLE_SIZE, gesture.ys, 0, RESAMPLE_SIZE)) {
+                return;
+            }
+        }
+        double[] unistroke = new double[2*RESAMPLE_SIZE + 2];
+        System.arraycopy(gesture.xs, 0, unistroke, 0, RESAMPLE_SIZE);
+        System.arraycopy(gesture.ys, 0, unistroke, RESAMPLE_SIZE, RESAMPLE_SIZE);
+        unistroke[2*RESAMPLE_SIZE] = startX(gesture);
+        unistroke[2*RESAMPLE_SIZE + 1] = startY(gesture);
+        sameHash.add(unistrokes.size());
+        unistrokes.add(unistroke);
+    }
+
+    /**
+     * @return the x component of the unit vector from the first processed point to the START_INDEX-th
+     */
+    private static double startX(ProcessedGesture gesture) {
+        return (gesture.xs[START_INDEX] - gesture.xs[0])/startLength(gesture);
+    }
+
+    /**
+     * @return the y component of the unit vector from the first processed point to the START_INDEX-th
+     */
+    private static double startY(ProcessedGesture gesture) {
+        return (gesture.ys[START_INDEX] - gesture.ys[0])/startLength(gesture);
+    }
+
+    private static double startLength(ProcessedGesture gesture) {
+        double dx = gesture.xs[START_INDEX] - gesture.xs[0];
+        double dy = gesture.ys[START_INDEX] - gesture.ys[0];
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+}
@@ -0,0 +1,209 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+/**
+ * Processes a gesture's points the same way as Recognizer's resample, rotateBy, scaleTo and translateTo
+ * methods, but fused into as few passes over primitive arrays as possible:
+ * <ol>
+ *     <li>measure the path length,</li>
+ *     <li>resample, summing the new points for the centroid as they are made,</li>
+ *     <li>rotate by the negative indicative angle around the centroid, tracking the bounding box,</li>
+ *     <li>scale and translate, recording each point's distance from the centre and the vector magnitude.</li>
+ * </ol>
+ * Rotating around the centroid leaves the centroid where it is, and scaling moves it to the scaled centroid, so
+ * the translation is known without recomputing the centroid after each step.
+ */
+class Normalizer {
+    private final int n;
+    private final double scaleSize;
+    private final double centreX;
+    private final double centreY;
+
+    /**
+     * Creates a normalizer
+     * @param n the number of points to resample gestures to
+     * @param scaleSize the size of the square gestures are scaled to
+     * @param centre the point gestures are centred on
+     */
+    Normalizer(int n, double scaleSize, Point centre) {
+        this.n = n;
+        this.scaleSize = scaleSize;
+        this.centreX = centre.getX();
+        this.centreY = centre.getY();
+    }
+
+    /**
+     * @return the number of points gestures are resampled to
+     */
+    int size() {
+        return n;
+    }
+
+    /**
+     * Processes the original points into the given gesture
+     * @param originalXs x coordinates of the original points
+     * @param originalYs y coordinates of the original points
+     * @param count the number of original points
+     * @param gesture where the processed points are written. Must hold n points.
+     */
+    void normalize(double[] originalXs, double[] originalYs, int count, ProcessedGesture gesture) {
+        resample(originalXs, originalYs, count, pathLength(originalXs, originalYs, count), gesture);
+        align(gesture);
+    }
+
+    /**
+     * Processes the original points into a point cloud for $P and $Q: resamples them, scales them so that the longer
+     * side of their bounding box is scaleSize, keeping their aspect ratio, and moves their centroid to the centre.
+     * Unlike normalize, the points are not rotated and the radii and magnitude are not filled in.
+     * @param originalXs x coordinates of the original points
+     * @param originalYs y coordinates of the original points
+     * @param count the number of original points
+     * @param cloud where the processed points are written. Must hold n points.
+     */
+    void normalizeCloud(double[] originalXs, double[] originalYs, int count, ProcessedGesture cloud) {
+        resample(originalXs, originalYs, count, pathLength(originalXs, originalYs, count), cloud);
+        double[] xs = cloud.xs;
+        double[] ys = cloud.ys;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double size = Math.max(maxX - minX, maxY - minY);
+        double scale = size > 0 ? scaleSize/size : 1;
+        for (int i = 0; i < n; i++) {
+            xs[i] = (xs[i] - cloud.centroidX)*scale + centreX;
+            ys[i] = (ys[i] - cloud.centroidY)*scale + centreY;
+        }
+        cloud.centroidX = centreX;
+        cloud.centroidY = centreY;
+    }
+
+    /**
+     * @return the length of the path through the first count points
+     */
+    static double pathLength(double[] xs, double[] ys, int count) {
+        double pathLength = 0;
+        for (int i = 1; i < count; i++) {
+            pathLength += distance(xs[i-1], ys[i-1], xs[i], ys[i]);
+        }
+        return pathLength;
+    }
+
+    /**
+     * Resamples the original points into n points spaced evenly along the path, like Recognizer.resample. The last
+     * point is always the last original point. Leaves the centroid of the resampled points in the gesture.
+     * @param originalXs x coordinates of the original points
+     * @param originalYs y coordinates of the original points
+     * @param count the number of original points
+     * @param pathLength the length of the path through the original points
+     * @param gesture where the resampled points are written
+     */
+    void resample(double[] originalXs, double[] originalYs, int count, double pathLength, ProcessedGesture gesture) {
+        double[] xs = gesture.xs;
+        double[] ys = gesture.ys;
+        double resampleInterval = pathLength/(n-1);
+        double accumulatedDistance = 0;
+        double x1 = originalXs[0];
+        double y1 = originalYs[0];
+        xs[0] = x1;
+        ys[0] = y1;
+        double sumX = x1;
+        double sumY = y1;
+        int resampled = 1;
+        int next = 1;
+        while (next < count && resampled < n - 1) {
+            double x2 = originalXs[next];
+            double y2 = originalYs[next];
+            double segmentDistance = distance(x1, y1, x2, y2);
+            if ((accumulatedDistance + segmentDistance) < resampleInterval) {
+                accumulatedDistance += segmentDistance;
+                x1 = x2;
+                y1 = y2;
+                next++;
+            } else {
+                double t = (resampleInterval - accumulatedDistance)/segmentDistance;
+                x1 += (x2 - x1)*t;
+                y1 += (y2 - y1)*t;
+                xs[resampled] = x1;
+                ys[resampled] = y1;
+                sumX += x1;
+                sumY += y1;
+                resampled++;
+                accumulatedDistance = 0;
+            }
+        }
+        for (; resampled < n; resampled++) {
+            xs[resampled] = originalXs[count - 1];
+            ys[resampled] = originalYs[count - 1];
+            sumX += xs[resampled];
+            sumY += ys[resampled];
+        }
+        gesture.centroidX = sumX/n;
+        gesture.centroidY = sumY/n;
+    }
+
+    /**
+     * Rotates resampled points by their negative indicative angle, scales them to the square and centres them.
+     * Expects the centroid left by resample, and replaces it with the centre.
+     * @param gesture the resampled gesture, which is processed in place
+     */
+    void align(ProcessedGesture gesture) {
+        double[] xs = gesture.xs;
+        double[] ys = gesture.ys;
+        double centroidX = gesture.centroidX;
+        double centroidY = gesture.centroidY;
+        double angle = Math.atan2(centroidY - ys[0], centroidX - xs[0]);
+        double cos = Math.cos(-angle);
+        double sin = Math.sin(-angle);
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            double dx = xs[i] - centroidX;
+            double dy = ys[i] - centroidY;
+            double x = dx*cos - dy*sin + centroidX;
+            double y = dx*sin + dy*cos + centroidY;
+            xs[i] = x;
+            ys[i] = y;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+        double scaleX = scaleSize/(maxX - minX);
+        double scaleY = scaleSize/(maxY - minY);
+        double translateX = centreX - centroidX*scaleX;
+        double translateY = centreY - centroidY*scaleY;
+        double[] radii = gesture.radii;
+        double radiusSum = 0;
+        double magnitudeSum = 0;
+        for (int i = 0; i < n; i++) {
+            double x = xs[i]*scaleX + translateX;
+            double y = ys[i]*scaleY + translateY;
+            xs[i] = x;
+            ys[i] = y;
+            radii[i] = distance(centreX, centreY, x, y);
+            radiusSum += radii[i];
+            magnitudeSum += x*x + y*y;
+        }
+        gesture.centroidX = centreX;
+        gesture.centroidY = centreY;
+        gesture.meanRadius = radiusSum/n;
+        gesture.magnitude = Math.sqrt(magnitudeSum);
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        return Math.sqrt(dx*dx + dy*dy);
+    }
+}
@@ -0,0 +1,99 @@
+package comp128.gestureRecognizer;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the closest template to a processed gesture by splitting the template store into partitions
+ * that are scanned on a fork/join pool. Each partition keeps its own best match and partitions are reduced
+ * pairwise. The smallest distance found by any partition is shared as the early-abandon bound. A template
+ * is only abandoned when it is strictly worse than some other template, and ties go to the lower slot, so
+ * the result is the same template the sequential scan would pick.
+ */
+class ParallelScan extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ProcessedGesture gesture;
+    private final TemplateStore store;
+    private final Matcher matcher;
+    private final int from;
+    private final int to;
+    private final int partitionSize;
+    private final AtomicLong sharedBound;
+    /** what this task's matcher calls counted, including its subtasks', or null if metrics are off */
+    final ScanCounters counters;
+
+    /** slot of the closest template in this partition, or -1 if none beat Double.MAX_VALUE */
+    int closestSlot = -1;
+    /** distance to the closest template in this partition */
+    double minDistance = Double.MAX_VALUE;
+
+    /**
+     * Creates a scan over the templates in slots [from, to)
+     * @param gesture the processed gesture, which is only read
+     * @param store the store holding the processed templates
+     * @param matcher the matcher used to compare the gesture with each template
+     * @param from first slot to scan
+     * @param to one past the last slot to scan
+     * @param partitionSize the largest number of templates scanned without splitting further
+     * @param counting whether to count the matchers' work for RecognizerMetrics. Each task counts into its own
+     * ScanCounters, which are added together as the partitions are reduced.
+     */
+    ParallelScan(ProcessedGesture gesture, TemplateStore store, Matcher matcher, int from, int to, int partitionSize, boolean counting) {
+        this(gesture, store, matcher, from, to, partitionSize, new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE)), counting);
+    }
+
+    private ParallelScan(ProcessedGesture gesture, TemplateStore store, Matcher matcher, int from, int to, int partitionSize,
+                         AtomicLong sharedBound, boolean counting) {
+        this.gesture = gesture;
+        this.store = store;
+        this.matcher = matcher;
+        this.from = from;
+        this.to = to;
+        this.partitionSize = partitionSize;
+        this.sharedBound = sharedBound;
+        this.counters = counting ? new ScanCounters() : null;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= partitionSize) {
+            for (int slot = from; slot < to; slot++) {
+                if (store.isRemoved(slot)) {
+                    continue;
+                }
+                double bound = Math.min(minDistance, Double.longBitsToDouble(sharedBound.get()));
+                double distance = matcher.distance(gesture, store, slot, bound, counters);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closestSlot = slot;
+                    lowerSharedBound(distance);
+                }
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        ParallelScan left = new ParallelScan(gesture, store, matcher, from, middle, partitionSize, sharedBound, counters != null);
+        ParallelScan right = new ParallelScan(gesture, store, matcher, middle, to, partitionSize, sharedBound, counters != null);
+        invokeAll(left, right);
+        if (counters != null) {
+            counters.add(left.counters);
+            counters.add(right.counters);
+        }
+        if (right.minDistance < left.minDistance) {
+            closestSlot = right.closestSlot;
+            minDistance = right.minDistance;
+        } else {
+            closestSlot = left.closestSlot;
+            minDistance = left.minDistance;
+        }
+    }
+
+    private void lowerSharedBound(double distance) {
+        long current = sharedBound.get();
+        while (distance < Double.longBitsToDouble(current)
+                && !sharedBound.compareAndSet(current, Double.doubleToLongBits(distance))) {
+            current = sharedBound.get();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A growable list of points kept as primitive x and y arrays. Clearing a buffer keeps its arrays,
+ * so a buffer that is reused for gesture after gesture stops allocating once it is big enough.
+ */
+class PointBuffer {
+    private double[] xs;
+    private double[] ys;
+    private int size;
+
+    /**
+     * Creates an empty buffer
+     */
+    PointBuffer() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty buffer with room for the given number of points
+     * @param capacity number of points the buffer can hold before it grows
+     */
+    PointBuffer(int capacity) {
+        xs = new double[Math.max(capacity, 1)];
+        ys = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a point to the end of the buffer
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     */
+    void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    /**
+     * Adds every point in the deque to the end of the buffer
+     * @param points the points to add
+     */
+    void addAll(Deque<Point> points) {
+        for (Point p : points) {
+            add(p.getX(), p.getY());
+        }
+    }
+
+    /**
+     * Removes all points from the buffer without releasing its arrays
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the number of points in the buffer
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the x coordinates. Only the first size() entries are points in the buffer.
+     */
+    double[] xs() {
+        return xs;
+    }
+
+    /**
+     * @return the y coordinates. Only the first size() entries are points in the buffer.
+     */
+    double[] ys() {
+        return ys;
+    }
+}
@@ -0,0 +1,178 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.Deque;
+
+/**
+ * Recognizer to recognize 2D gestures with the $P point-cloud algorithm (Vatavu, Anthony and Wobbrock 2012).
+ * Gestures are resampled and normalized like in $1, but then treated as an unordered cloud of points, so the
+ * direction a gesture was drawn in and where it starts don't matter. There is no rotation search; instead each
+ * point of one cloud is greedily matched with the closest unmatched point of the other, starting from several
+ * points spread around the cloud.
+ * <p>
+ * Clouds are kept in a TemplateStore, so like Recognizer, templates can be added while other threads are
+ * recognizing. Each comparison gives up on a template as soon as its weighted sum passes the best distance found
+ * so far, which does not change the result.
+ */
+public class PointCloudRecognizer implements GestureRecognizer {
+    private static final int CLOUD_SIZE = 32;
+    /** controls how many start points are tried, from 0 (every point) to 1 (just the first) */
+    private static final double EPSILON = 0.5;
+    private static final int STEP = (int) Math.floor(Math.pow(CLOUD_SIZE, 1 - EPSILON));
+
+    private volatile TemplateStore store = new TemplateStore(CLOUD_SIZE);
+    private final Object writeLock = new Object();
+    private final Normalizer normalizer = new Normalizer(CLOUD_SIZE, 1, new Point(0, 0));
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * The cloud of the gesture being recognized and the indices of the points not matched yet, reused for every
+     * gesture on a thread
+     */
+    private static final class Scratch {
+        final ProcessedGesture cloud = new ProcessedGesture(CLOUD_SIZE);
+        final int[] unmatched = new int[CLOUD_SIZE];
+    }
+
+    /**
+     * Constructs a recognizer object
+     */
+    public PointCloudRecognizer(){
+    }
+
+    /**
+     * Create a template to use for matching
+     * @param name of the template
+     * @param points in the template gesture's path
+     */
+    @Override
+    public void addTemplate(String name, Deque<Point> points){
+        ProcessedGesture cloud = scratch.get().cloud;
+        cloud.raw.clear();
+        cloud.raw.addAll(points);
+        normalize(cloud.raw.xs(), cloud.raw.ys(), cloud.raw.size(), cloud);
+        synchronized (writeLock) {
+            store = store.withTemplate(name, cloud.xs, cloud.ys);
+        }
+    }
+
+    /**
+     * @return the number of templates
+     */
+    @Override
+    public int getTemplateCount(){
+        return store.liveCount();
+    }
+
+    /**
+     * Uses the $P algorithm to find the template closest to a gesture
+     * @param originalPoints the deque of points that needs to be recognised
+     * @return a BestMatch containing the template and score that the gesture is closest to, or null if there are
+     * no templates
+     */
+    @Override
+    public BestMatch recognize(Deque<Point> originalPoints){
+        TemplateStore store = this.store;
+        if (store.liveCount() == 0) {
+            return null;
+        }
+        Scratch scratch = this.scratch.get();
+        ProcessedGesture cloud = scratch.cloud;
+        cloud.raw.clear();
+        cloud.raw.addAll(originalPoints);
+        normalize(cloud.raw.xs(), cloud.raw.ys(), cloud.raw.size(), cloud);
+
+        double minDistance = Double.MAX_VALUE;
+        int closestSlot = store.firstLiveSlot();
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isRemoved(slot)) {
+                continue;
+            }
+            double distance = greedyCloudMatch(cloud, store, slot, minDistance, scratch.unmatched);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closestSlot = slot;
+            }
+        }
+        return new BestMatch(store.get(closestSlot), score(minDistance));
+    }
+
+    /**
+     * Resamples a gesture to CLOUD_SIZE points, scales it so that the longer side of its bounding box is 1, keeping
+     * its aspect ratio, and moves its centroid to the origin
+     * @param originalXs x coordinates of the original points
+     * @param originalYs y coordinates of the original points
+     * @param count the number of original points
+     * @param cloud where the normalized points are written
+     */
+    void normalize(double[] originalXs, double[] originalYs, int count, ProcessedGesture cloud) {
+        normalizer.normalizeCloud(originalXs, originalYs, count, cloud);
+    }
+
+    /**
+     * Matches the gesture and template clouds in both directions from every STEP-th start point and keeps the
+     * smallest distance
+     * @param bound distance the template has to beat
+     * @return the distance between the clouds, or a value of at least bound if the template cannot beat it
+     */
+    private static double greedyCloudMatch(ProcessedGesture cloud, TemplateStore store, int slot, double bound, int[] unmatched) {
+        double[] templateXs = store.xs();
+        double[] templateYs = store.ys();
+        int offset = store.offset(slot);
+        double minDistance = bound;
+        for (int start = 0; start < CLOUD_SIZE; start += STEP) {
+            minDistance = Math.min(minDistance, cloudDistance(cloud.xs, cloud.ys, 0, templateXs, templateYs, offset, start, minDistance, unmatched));
+            minDistance = Math.min(minDistance, cloudDistance(templateXs, templateYs, offset, cloud.xs, cloud.ys, 0, start, minDistance, unmatched));
+        }
+        return minDistance;
+    }
+
+    /**
+     * Matches each point of cloud a, starting from the given one and wrapping around, with the closest point of
+     * cloud b that is not matched yet. Earlier points are weighted more, since they have more points to choose from.
+     * The points of b not matched yet are kept at the front of unmatched, so each step only looks at those. Ties go
+     * to the lowest index, as in the paper.
+     * @param bound the sum above which the exact result is not needed
+     * @return the weighted sum of the distances between matched points, or a partial sum of at least bound if it
+     * stopped early
+     */
+    private static double cloudDistance(double[] ax, double[] ay, int aOffset, double[] bx, double[] by, int bOffset,
+                                        int start, double bound, int[] unmatched) {
+        for (int j = 0; j < CLOUD_SIZE; j++) {
+            unmatched[j] = j;
+        }
+        double sum = 0;
+        for (int k = 0; k < CLOUD_SIZE; k++) {
+            int i = start + k < CLOUD_SIZE ? start + k : start + k - CLOUD_SIZE;
+            double x = ax[aOffset + i];
+            double y = ay[aOffset + i];
+            double minSquared = Double.POSITIVE_INFINITY;
+            int closest = 0;
+            int remaining = CLOUD_SIZE - k;
+            for (int p = 0; p < remaining; p++) {
+                int j = unmatched[p];
+                double dx = bx[bOffset + j] - x;
+                double dy = by[bOffset + j] - y;
+                double squared = dx*dx + dy*dy;
+                if (squared < minSquared || (squared == minSquared && j < unmatched[closest])) {
+                    minSquared = squared;
+                    closest = p;
+                }
+            }
+            unmatched[closest] = unmatched[remaining - 1];
+            sum += (1 - (double) k/CLOUD_SIZE)*Math.sqrt(minSquared);
+            if (sum >= bound) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Scores a distance so that identical clouds score 1, as in the $P paper
+     */
+    private static double score(double distance) {
+        return Math.max((2 - distance)/2, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package comp128.gestureRecognizer;
+
+/**
+ * The processed points of a gesture that is being recognized, along with the scratch space used to
+ * prepare them. The recognizer keeps one of these per thread and reuses it for every gesture, so that
+ * recognition does not allocate once the scratch space is big enough.
+ */
+class ProcessedGesture {
+    /** Copy of the original points when the gesture was given as a deque */
+    final PointBuffer raw = new PointBuffer();
+    /** x coordinates of the processed points */
+    final double[] xs;
+    /** y coordinates of the processed points */
+    final double[] ys;
+    /** centroid of the processed points, which the gesture is rotated around while matching */
+    double centroidX;
+    double centroidY;
+    /** length of the processed points taken as one vector, measured from the origin */
+    double magnitude;
+    /** distance of each processed point from the centroid */
+    final double[] radii;
+    /** average distance of the processed points from the centroid */
+    double meanRadius;
+    /** x and y coordinates of the processed points at each of TemplateStore.COARSE_SIZES, filled in by Cascade */
+    final double[][] coarseXs = new double[TemplateStore.COARSE_SIZES.length][];
+    final double[][] coarseYs = new double[TemplateStore.COARSE_SIZES.length][];
+
+    /**
+     * Creates scratch space for gestures resampled to n points
+     * @param n the number of processed points
+     */
+    ProcessedGesture(int n) {
+        xs = new double[n];
+        ys = new double[n];
+        radii = new double[n];
+        for (int level = 0; level < TemplateStore.COARSE_SIZES.length; level++) {
+            coarseXs[level] = new double[TemplateStore.COARSE_SIZES[level]];
+            coarseYs[level] = new double[TemplateStore.COARSE_SIZES[level]];
+        }
+    }
+
+    /**
+     * @return the number of processed points
+     */
+    int size() {
+        return xs.length;
+    }
+}
@@ -0,0 +1,55 @@
+package comp128.gestureRecognizer;
+
+/**
+ * The Protractor matcher (Li 2010). Treats the processed gesture and template as vectors centred on the
+ * origin and finds the rotation that maximizes their cosine similarity in closed form, using one
+ * dot-product pass instead of a search over angles. Like the golden section search, the rotation is
+ * limited to between -45 and 45 degrees. The distance is the angle between the two vectors at that rotation.
+ */
+public class ProtractorMatcher extends Matcher {
+    private static final double MAX_ROTATION = Math.toRadians(45);
+
+    /**
+     * Calculates the angular distance between the gesture and a template at the best rotation
+     * @param gesture the processed gesture
+     * @param store the store holding the processed templates
+     * @param slot index of the template in the store
+     * @param bound not used, since the distance takes a single pass anyway
+     * @param counters not used, since there is nothing to count
+     * @return the angle in radians between the gesture and template vectors, from 0 to pi
+     */
+    @Override
+    double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound, ScanCounters counters) {
+        double[] xs = gesture.xs;
+        double[] ys = gesture.ys;
+        double[] templateXs = store.xs();
+        double[] templateYs = store.ys();
+        int offset = store.offset(slot);
+        double a = 0;
+        double b = 0;
+        for (int i = 0; i < xs.length; i++) {
+            double tx = templateXs[offset + i];
+            double ty = templateYs[offset + i];
+            a += tx*xs[i] + ty*ys[i];
+            b += ty*xs[i] - tx*ys[i];
+        }
+        double angle = Math.atan(b/a);
+        double similarity;
+        if (Math.abs(angle) <= MAX_ROTATION) {
+            similarity = Math.signum(a)*Math.sqrt(a*a + b*b);
+        } else {
+            angle = Math.copySign(MAX_ROTATION, angle);
+            similarity = a*Math.cos(angle) + b*Math.sin(angle);
+        }
+        similarity /= gesture.magnitude*store.magnitude(slot);
+        return Math.acos(Math.max(-1, Math.min(1, similarity)));
+    }
+
+    /**
+     * Scores an angular distance so that identical vectors score 1 and perpendicular ones score 0
+     */
+    @Override
+    double score(double distance, double scaleSize) {
+        return 1 - 2*distance/Math.PI;
+    }
+}
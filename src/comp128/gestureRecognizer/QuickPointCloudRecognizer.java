@@ -0,0 +1,281 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Recognizer to recognize 2D gestures with the $Q point-cloud algorithm (Vatavu, Anthony and Wobbrock 2018), a
+ * faster version of $P. Clouds are matched with squared distances, and every cloud gets a lookup table when it is
+ * made: a LUT_SIZE by LUT_SIZE grid over the normalized space giving the index of the cloud point closest to each
+ * cell. Looking up each point of one cloud in the other's table gives, in one pass, an estimate of the smallest
+ * cloud distance from every start point the greedy match would try. Start points whose estimate can't beat the best
+ * distance so far are skipped without running the O(n^2) greedy match at all.
+ * <p>
+ * As in the paper, the table only finds an approximately closest point, so the estimate is a lower bound in
+ * practice rather than a guaranteed one. Templates are published the same way as in Recognizer, so they can be
+ * added while other threads are recognizing.
+ */
+public class QuickPointCloudRecognizer implements GestureRecognizer {
+    private static final int CLOUD_SIZE = 32;
+    /** controls how many start points are tried, from 0 (every point) to 1 (just the first) */
+    private static final double EPSILON = 0.5;
+    private static final int STEP = (int) Math.floor(Math.pow(CLOUD_SIZE, 1 - EPSILON));
+    private static final int MAX_INT_COORDINATE = 1024;
+    private static final int LUT_SIZE = 64;
+    private static final int LUT_SCALE_FACTOR = MAX_INT_COORDINATE/LUT_SIZE;
+
+    private volatile Library library = new Library(new TemplateStore(CLOUD_SIZE), new byte[16][], new short[16][]);
+    private final Object writeLock = new Object();
+    private final Normalizer normalizer = new Normalizer(CLOUD_SIZE, 1, new Point(0, 0));
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * The template clouds along with each template's lookup table and the table cell of each of its points, by
+     * slot. Like the store's arrays, the table arrays are shared with the next library when there is room and only
+     * written past the end of this library's templates, so a library never changes once published.
+     */
+    private static final class Library {
+        final TemplateStore store;
+        final byte[][] luts;
+        final short[][] cells;
+
+        Library(TemplateStore store, byte[][] luts, short[][] cells) {
+            this.store = store;
+            this.luts = luts;
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * The cloud of the gesture being recognized and its lookup table, along with the arrays used while matching,
+     * reused for every gesture on a thread
+     */
+    private static final class Scratch {
+        final ProcessedGesture cloud = new ProcessedGesture(CLOUD_SIZE);
+        final byte[] lut = new byte[LUT_SIZE*LUT_SIZE];
+        final short[] cells = new short[CLOUD_SIZE];
+        final int[] unmatched = new int[CLOUD_SIZE];
+        final double[] lowerBounds1 = new double[CLOUD_SIZE/STEP + 1];
+        final double[] lowerBounds2 = new double[CLOUD_SIZE/STEP + 1];
+        final double[] summedDistances = new double[CLOUD_SIZE];
+    }
+
+    /**
+     * Constructs a recognizer object
+     */
+    public QuickPointCloudRecognizer(){
+    }
+
+    /**
+     * Create a template to use for matching. Its lookup table is built here, once.
+     * @param name of the template
+     * @param points in the template gesture's path
+     */
+    @Override
+    public void addTemplate(String name, Deque<Point> points){
+        ProcessedGesture cloud = scratch.get().cloud;
+        cloud.raw.clear();
+        cloud.raw.addAll(points);
+        normalizer.normalizeCloud(cloud.raw.xs(), cloud.raw.ys(), cloud.raw.size(), cloud);
+        short[] cells = new short[CLOUD_SIZE];
+        byte[] lut = new byte[LUT_SIZE*LUT_SIZE];
+        index(cloud.xs, cloud.ys, 0, cells, lut);
+        synchronized (writeLock) {
+            Library current = library;
+            int slot = current.store.size();
+            byte[][] luts = current.luts;
+            short[][] allCells = current.cells;
+            if (slot == luts.length) {
+                luts = Arrays.copyOf(luts, 2*slot);
+                allCells = Arrays.copyOf(allCells, 2*slot);
+            }
+            luts[slot] = lut;
+            allCells[slot] = cells;
+            library = new Library(current.store.withTemplate(name, cloud.xs, cloud.ys), luts, allCells);
+        }
+    }
+
+    /**
+     * @return the number of templates
+     */
+    @Override
+    public int getTemplateCount(){
+        return library.store.liveCount();
+    }
+
+    /**
+     * Uses the $Q algorithm to find the template closest to a gesture
+     * @param originalPoints the deque of points that needs to be recognised
+     * @return a BestMatch containing the template and score that the gesture is closest to, or null if there are
+     * no templates
+     */
+    @Override
+    public BestMatch recognize(Deque<Point> originalPoints){
+        Library library = this.library;
+        TemplateStore store = library.store;
+        if (store.liveCount() == 0) {
+            return null;
+        }
+        Scratch scratch = this.scratch.get();
+        ProcessedGesture cloud = scratch.cloud;
+        cloud.raw.clear();
+        cloud.raw.addAll(originalPoints);
+        normalizer.normalizeCloud(cloud.raw.xs(), cloud.raw.ys(), cloud.raw.size(), cloud);
+        index(cloud.xs, cloud.ys, 0, scratch.cells, scratch.lut);
+
+        double minDistance = Double.POSITIVE_INFINITY;
+        int closestSlot = store.firstLiveSlot();
+        for (int slot = 0; slot < store.size(); slot++) {
+            double distance = cloudMatch(scratch, store, library.luts[slot], library.cells[slot], slot, minDistance);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closestSlot = slot;
+            }
+        }
+        return new BestMatch(store.get(closestSlot), minDistance > 1 ? 1/minDistance : 1);
+    }
+
+    /**
+     * Finds the lookup table cell of each point of a cloud, and builds the cloud's lookup table
+     * @param xs x coordinates of the normalized cloud
+     * @param ys y coordinates of the normalized cloud
+     * @param offset index of the cloud's first point
+     * @param cells receives the cell of each point, as x*LUT_SIZE + y
+     * @param lut receives the index of the point closest to each cell, at x*LUT_SIZE + y
+     */
+    static void index(double[] xs, double[] ys, int offset, short[] cells, byte[] lut) {
+        for (int i = 0; i < CLOUD_SIZE; i++) {
+            cells[i] = (short) (cell(xs[offset + i])*LUT_SIZE + cell(ys[offset + i]));
+        }
+        for (int x = 0; x < LUT_SIZE; x++) {
+            for (int y = 0; y < LUT_SIZE; y++) {
+                int closest = 0;
+                int minSquared = Integer.MAX_VALUE;
+                for (int i = 0; i < CLOUD_SIZE; i++) {
+                    int dx = cells[i]/LUT_SIZE - x;
+                    int dy = cells[i]%LUT_SIZE - y;
+                    int squared = dx*dx + dy*dy;
+                    if (squared < minSquared) {
+                        minSquared = squared;
+                        closest = i;
+                    }
+                }
+                lut[x*LUT_SIZE + y] = (byte) closest;
+            }
+        }
+    }
+
+    /**
+     * Converts a normalized coordinate to integer coordinates from 0 to MAX_INT_COORDINATE - 1 and then to a
+     * lookup table cell, as in the paper. Coordinates at the very edge are kept inside the table.
+     */
+    private static int cell(double coordinate) {
+        long integer = Math.round((coordinate + 1)/2*(MAX_INT_COORDINATE - 1));
+        return (int) Math.max(0, Math.min(LUT_SIZE - 1, Math.round((double) integer/LUT_SCALE_FACTOR)));
+    }
+
+    /**
+     * Matches the gesture and a template cloud in both directions from every STEP-th start point, skipping the
+     * start points whose lower bound can't beat the best distance so far
+     * @param minDistance distance the template has to beat
+     * @return the distance between the clouds, or minDistance if the template cannot beat it
+     */
+    private static double cloudMatch(Scratch scratch, TemplateStore store, byte[] templateLut, short[] templateCells, int slot, double minDistance) {
+        if (store.isRemoved(slot)) {
+            return minDistance;
+        }
+        double[] xs = scratch.cloud.xs;
+        double[] ys = scratch.cloud.ys;
+        double[] templateXs = store.xs();
+        double[] templateYs = store.ys();
+        int offset = store.offset(slot);
+        double[] lowerBounds1 = lowerBounds(xs, ys, 0, scratch.cells, templateXs, templateYs, offset, templateLut,
+                scratch.summedDistances, scratch.lowerBounds1);
+        double[] lowerBounds2 = lowerBounds(templateXs, templateYs, offset, templateCells, xs, ys, 0, scratch.lut,
+                scratch.summedDistances, scratch.lowerBounds2);
+        for (int start = 0, j = 0; start < CLOUD_SIZE; start += STEP, j++) {
+            if (lowerBounds1[j] < minDistance) {
+                minDistance = Math.min(minDistance, cloudDistance(xs, ys, 0, templateXs, templateYs, offset, start, minDistance, scratch.unmatched));
+            }
+            if (lowerBounds2[j] < minDistance) {
+                minDistance = Math.min(minDistance, cloudDistance(templateXs, templateYs, offset, xs, ys, 0, start, minDistance, scratch.unmatched));
+            }
+        }
+        return minDistance;
+    }
+
+    /**
+     * Estimates the smallest cloud distance from cloud a to cloud b for every STEP-th start point. Each point of a
+     * is paired with the point of b that b's lookup table gives for its cell, without taking points out of the
+     * running, so the weighted sum of those squared distances is usually no more than the greedy match's. The sum
+     * for the first start point is worked out directly, and the others from it using running sums of the distances,
+     * since moving the start by s adds s times the total and takes n times the distances of the first s points.
+     * @param aCells the lookup table cell of each point of a
+     * @param bLut the lookup table of b
+     * @param summedDistances scratch array for the running sums
+     * @param lowerBounds receives the estimate for each start point
+     * @return lowerBounds
+     */
+    private static double[] lowerBounds(double[] ax, double[] ay, int aOffset, short[] aCells, double[] bx, double[] by, int bOffset,
+                                        byte[] bLut, double[] summedDistances, double[] lowerBounds) {
+        double first = 0;
+        double sum = 0;
+        for (int i = 0; i < CLOUD_SIZE; i++) {
+            int closest = bLut[aCells[i]];
+            double dx = bx[bOffset + closest] - ax[aOffset + i];
+            double dy = by[bOffset + closest] - ay[aOffset + i];
+            double squared = dx*dx + dy*dy;
+            sum += squared;
+            summedDistances[i] = sum;
+            first += (CLOUD_SIZE - i)*squared;
+        }
+        lowerBounds[0] = first;
+        for (int start = STEP, j = 1; start < CLOUD_SIZE; start += STEP, j++) {
+            lowerBounds[j] = first + start*summedDistances[CLOUD_SIZE - 1] - CLOUD_SIZE*summedDistances[start - 1];
+        }
+        return lowerBounds;
+    }
+
+    /**
+     * Matches each point of cloud a, starting from the given one and wrapping around, with the closest point of
+     * cloud b that is not matched yet, by squared distance. The first point is weighted n and the last 1. The
+     * points of b not matched yet are kept at the front of unmatched, so each step only looks at those. Ties go to
+     * the lowest index, as in the paper.
+     * @param bound the sum above which the exact result is not needed
+     * @return the weighted sum of the squared distances between matched points, or a partial sum of at least bound
+     * if it stopped early
+     */
+    private static double cloudDistance(double[] ax, double[] ay, int aOffset, double[] bx, double[] by, int bOffset,
+                                        int start, double bound, int[] unmatched) {
+        for (int j = 0; j < CLOUD_SIZE; j++) {
+            unmatched[j] = j;
+        }
+        double sum = 0;
+        for (int k = 0; k < CLOUD_SIZE; k++) {
+            int i = start + k < CLOUD_SIZE ? start + k : start + k - CLOUD_SIZE;
+            double x = ax[aOffset + i];
+            double y = ay[aOffset + i];
+            double minSquared = Double.POSITIVE_INFINITY;
+            int closest = 0;
+            int remaining = CLOUD_SIZE - k;
+            for (int p = 0; p < remaining; p++) {
+                int j = unmatched[p];
+                double dx = bx[bOffset + j] - x;
+                double dy = by[bOffset + j] - y;
+                double squared = dx*dx + dy*dy;
+                if (squared < minSquared || (squared == minSquared && j < unmatched[closest])) {
+                    minSquared = squared;
+                    closest = p;
+                }
+            }
+            unmatched[closest] = unmatched[remaining - 1];
+            sum += (CLOUD_SIZE - k)*minSquared;
+            if (sum >= bound) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+}
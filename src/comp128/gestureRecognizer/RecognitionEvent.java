@@ -0,0 +1,39 @@
+package comp128.gestureRecognizer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for one gesture recognized by a Recognizer with metrics turned on. Only created
+ * when the metrics were asked to emit JFR events, and only committed while a recording has it enabled.
+ */
+@Name("comp128.gestureRecognizer.Recognition")
+@Label("Gesture Recognition")
+@Category("Gesture Recognizer")
+@Description("Time spent in each stage of recognizing one gesture")
+class RecognitionEvent extends Event {
+    @Label("Resample")
+    @Timespan(Timespan.NANOSECONDS)
+    long resampleNanos;
+
+    @Label("Normalize")
+    @Timespan(Timespan.NANOSECONDS)
+    long normalizeNanos;
+
+    @Label("Template Scan")
+    @Timespan(Timespan.NANOSECONDS)
+    long scanNanos;
+
+    @Label("Templates Scanned")
+    int templatesScanned;
+
+    @Label("Golden Section Iterations")
+    int goldenSectionIterations;
+
+    @Label("Early Abandons")
+    int earlyAbandons;
+}
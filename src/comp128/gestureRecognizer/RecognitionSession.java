@@ -0,0 +1,137 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Recognizes a gesture while it is being drawn. Each point is added to a primitive buffer as it arrives and the
+ * path length is kept up to date, so the finished gesture never needs a separate pass to measure it. At most once
+ * per publish interval the session recognizes the gesture drawn so far and publishes that provisional match.
+ * When the gesture is finished, the latest provisional template is compared first, so its distance is the
+ * early-abandon bound for the whole final scan and most templates are abandoned almost immediately. The final
+ * match is the same as recognizing the whole gesture with Recognizer.recognize.
+ * <p>
+ * Provisional matches can be recognized on an executor instead of the thread adding points, so a user interface
+ * thread only copies the points drawn so far. Only one provisional recognition runs at a time: while one is running,
+ * later chances to publish are dropped, and the next one after it finishes picks up every point added meanwhile. A
+ * provisional match that finishes after the gesture is not published.
+ */
+public class RecognitionSession {
+    private final Recognizer recognizer;
+    private final Consumer<BestMatch> onProvisionalMatch;
+    private final long publishIntervalNanos;
+    private final Executor executor;
+    private final PointBuffer points = new PointBuffer();
+    private double pathLength;
+    private long lastPublished;
+    private volatile BestMatch provisional;
+    private volatile boolean finished;
+    private final AtomicBoolean recognizing = new AtomicBoolean();
+
+    /**
+     * Creates a session. Use Recognizer.startSession instead.
+     * @param recognizer the recognizer whose templates are matched
+     * @param onProvisionalMatch called with each provisional match
+     * @param publishIntervalMillis the shortest time between provisional matches
+     * @param executor runs provisional recognitions and then onProvisionalMatch, or null to run them in addPoint
+     */
+    RecognitionSession(Recognizer recognizer, Consumer<BestMatch> onProvisionalMatch, long publishIntervalMillis, Executor executor) {
+        this.recognizer = recognizer;
+        this.onProvisionalMatch = onProvisionalMatch;
+        this.publishIntervalNanos = TimeUnit.MILLISECONDS.toNanos(publishIntervalMillis);
+        this.executor = executor;
+        this.lastPublished = System.nanoTime();
+    }
+
+    /**
+     * Adds the next point of the gesture, publishing a provisional match if the publish interval has passed. With an
+     * executor, the match is recognized and published later on the executor, unless a provisional recognition is
+     * still running.
+     * @param point the point that was just drawn
+     */
+    public void addPoint(Point point) {
+        double x = point.getX();
+        double y = point.getY();
+        int count = points.size();
+        if (count > 0) {
+            double dx = x - points.xs()[count - 1];
+            double dy = y - points.ys()[count - 1];
+            pathLength += Math.sqrt(dx*dx + dy*dy);
+        }
+        points.add(x, y);
+
+        long now = System.nanoTime();
+        if (pathLength > 0 && now - lastPublished >= publishIntervalNanos) {
+            if (executor == null) {
+                lastPublished = now;
+                provisional = match(points.xs(), points.ys(), points.size(), pathLength);
+                onProvisionalMatch.accept(provisional);
+            }
+            else if (recognizing.compareAndSet(false, true)) {
+                lastPublished = now;
+                double[] xs = Arrays.copyOf(points.xs(), points.size());
+                double[] ys = Arrays.copyOf(points.ys(), points.size());
+                double length = pathLength;
+                executor.execute(() -> publish(xs, ys, length));
+            }
+        }
+    }
+
+    /**
+     * Recognizes a copy of the points drawn so far on the executor and publishes the match, unless the gesture has
+     * been finished in the meantime
+     */
+    private void publish(double[] xs, double[] ys, double length) {
+        try {
+            BestMatch match = match(xs, ys, xs.length, length);
+            if (!finished) {
+                provisional = match;
+                onProvisionalMatch.accept(match);
+            }
+        }
+        finally {
+            recognizing.set(false);
+        }
+    }
+
+    /**
+     * @return the most recently published provisional match, or null if none has been published
+     */
+    public BestMatch getProvisionalMatch() {
+        return provisional;
+    }
+
+    /**
+     * @return the number of points added so far
+     */
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Recognizes the whole gesture
+     * @return the closest template and its score, or null if there are no templates or no points
+     */
+    public BestMatch finish() {
+        finished = true;
+        if (points.size() == 0) {
+            return null;
+        }
+        return match(points.xs(), points.ys(), points.size(), pathLength);
+    }
+
+    private BestMatch match(double[] xs, double[] ys, int count, double length) {
+        BestMatch match = new BestMatch();
+        BestMatch provisional = this.provisional;
+        Template hint = provisional == null ? null : provisional.getTemplate();
+        if (recognizer.recognize(xs, ys, count, length, hint, match)) {
+            return match;
+        }
+        return null;
+    }
+}
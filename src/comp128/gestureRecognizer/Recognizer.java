@@ -2,21 +2,50 @@ package comp128.gestureRecognizer;
 
 import Graphics.Point;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Recognizer to recognize 2D gestures. Uses the $1 gesture recognition algorithm.
+ * <p>
+ * Templates can be added while other threads are recognizing. Every recognition reads the current template store
+ * once and scans it without locking, and the stores never change once published: adding templates builds a new
+ * store and swaps it in. Adding many templates at once with addTemplates publishes them in one swap, and removing
+ * or replacing templates swaps in a new store the same way. Settings such
+ * as the matcher, parallel scan and metrics should be chosen before the recognizer is shared between threads.
  */
-public class Recognizer {
+public class Recognizer implements GestureRecognizer {
     private final int RESAMPLE_SIZE = 64;
     private final double SCALE_SIZE = 200;
     private final Point CENTRE_POINT = new Point(0, 0);
+    private static final int QUERY_BLOCK_SIZE = 16;
+    private static final int TEMPLATE_BLOCK_SIZE = 64;
+    private static final int INGEST_CHUNK_SIZE = 64;
 
-    private List<Template> templates = new ArrayList<>();
+    private volatile TemplateStore store = new TemplateStore(RESAMPLE_SIZE);
+    private final Object writeLock = new Object();
+    private final Normalizer normalizer = new Normalizer(RESAMPLE_SIZE, SCALE_SIZE, CENTRE_POINT);
+    private Matcher matcher = new GoldenSectionMatcher();
+    private ForkJoinPool scanPool;
+    private int parallelThreshold;
+    private Cascade cascade;
+    private volatile VantagePointIndex index;
+    private RecognizerMetrics metrics;
+    private final ThreadLocal<ProcessedGesture> scratch = ThreadLocal.withInitial(() -> new ProcessedGesture(RESAMPLE_SIZE));
 
     /**
      * Constructs a recognizer object
@@ -24,15 +53,310 @@ public class Recognizer {
     public Recognizer(){
     }
 
+    /**
+     * Sets the strategy used to compare gestures against templates. The default is the golden section
+     * search from the $1 paper.
+     * @param matcher the matcher to use, e.g. a GoldenSectionMatcher, a ProtractorMatcher or a DtwMatcher
+     */
+    public void setMatcher(Matcher matcher){
+        synchronized (writeLock) {
+            this.matcher = matcher;
+            publish(store);
+        }
+    }
+
+    /**
+     * Turns on parallel scanning of the templates. Once there are at least minTemplates templates, recognize
+     * splits them into partitions that are compared with the gesture on the given pool and then combines the
+     * best match from each partition. Smaller libraries are still scanned on the calling thread, where they
+     * don't pay for scheduling. The result is the same template and score either way.
+     * @param pool the pool to scan on, or null to always scan on the calling thread
+     * @param minTemplates the number of templates below which the scan stays on the calling thread
+     */
+    public void setParallelScan(ForkJoinPool pool, int minTemplates){
+        this.scanPool = pool;
+        this.parallelThreshold = minTemplates;
+    }
+
+    /**
+     * Turns on coarse-to-fine matching in recognize. Every template is first ranked on a few points subsampled from
+     * its processed points, 8 and then 16 of them, and only the closest candidateFraction of the templates are
+     * compared with the gesture in full. This is much faster for large libraries, but unlike the full scan it can
+     * miss the closest template when that template ranks poorly on the coarse points. Libraries too small to be
+     * narrowed down are still scanned in full, as are the templates in recognizeTopK. The coarse points of the
+     * templates are only kept while the cascade is on, so turning it on works them out for every template already
+     * added.
+     * @param candidateFraction fraction of the templates compared in full, above 0 and at most 1, or 0 to turn
+     * the cascade off
+     */
+    public void setCascade(double candidateFraction){
+        synchronized (writeLock) {
+            this.cascade = candidateFraction == 0 ? null : new Cascade(candidateFraction);
+            publish(store);
+        }
+    }
+
+    /**
+     * Turns on a vantage-point tree over the processed templates in recognize. The tree finds the templates nearest
+     * to the gesture without rotating it, usually without measuring the distance to most templates, and only those
+     * candidates are compared with the gesture in full. The tree is kept up to date as templates are added and
+     * removed. Like the cascade, it can miss the closest template when a rotation brings that template closer than
+     * the candidates, and libraries of no more than the given number of templates are still scanned in full. While
+     * the tree is on, it is used instead of the cascade.
+     * @param candidates the number of nearest templates compared in full, or 0 to turn the tree off
+     */
+    public void setVantagePointIndex(int candidates){
+        synchronized (writeLock) {
+            this.index = candidates == 0 ? null : new VantagePointIndex(candidates, store);
+        }
+    }
+
+    /**
+     * Publishes a new template store, and then the vantage-point tree updated for it, so a recognition that reads
+     * the tree and then the store never sees a tree holding templates the store doesn't. The store keeps the coarse
+     * levels only while the cascade is on and the envelopes only while the matcher is a DtwMatcher. Must be called
+     * while holding the write lock.
+     */
+    private void publish(TemplateStore newStore) {
+        newStore = cascade != null ? newStore.withCoarseLevels() : newStore.withoutCoarseLevels();
+        newStore = matcher instanceof DtwMatcher ? newStore.withEnvelopes() : newStore.withoutEnvelopes();
+        store = newStore;
+        VantagePointIndex index = this.index;
+        if (index != null) {
+            this.index = index.updatedFor(newStore);
+        }
+    }
+
+    /**
+     * Turns on timing and counting of each stage of recognition. Gestures recognized with recognize, with a
+     * session or with recognizeTopK are recorded. While templates are scanned in parallel, the counts of golden
+     * section iterations and early abandons depend on how soon each partition saw the others' best distance. Turning
+     * metrics off also turns off the counting.
+     * @param metrics the metrics to record into, or null to stop recording
+     */
+    public void setMetrics(RecognizerMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the metrics being recorded into, or null if recording is off
+     */
+    public RecognizerMetrics getMetrics(){
+        return metrics;
+    }
+
     /**
      * Create a template to use for matching
      * @param name of the template
      * @param points in the template gesture's path
      */
+    @Override
     public void addTemplate(String name, Deque<Point> points){
-        Deque<Point> processedPoints = prepPoints(points);
-        Template t = new Template(processedPoints, name);
-        templates.add(t);
+        ProcessedGesture gesture = scratch.get();
+        gesture.raw.clear();
+        gesture.raw.addAll(points);
+        normalizer.normalize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), gesture);
+        synchronized (writeLock) {
+            publish(store.withTemplate(name, gesture.xs, gesture.ys));
+        }
+    }
+
+    /**
+     * Creates many templates at once. The gestures are processed first and then published together, so adding
+     * templates in batches copies the template store less often while other threads are recognizing.
+     * @param names name of each template
+     * @param gestures the points of each template gesture, in the same order as their names
+     */
+    public void addTemplates(List<String> names, List<Deque<Point>> gestures){
+        if (names.size() != gestures.size()) {
+            throw new IllegalArgumentException(names.size() + " names for " + gestures.size() + " gestures");
+        }
+        try {
+            addTemplates(gestures.size(), 1, (index, points) -> {
+                points.addAll(gestures.get(index));
+                return names.get(index);
+            });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Reading gestures from memory failed", e);
+        }
+    }
+
+    /**
+     * Creates a template from every gesture in an archive. Each gesture is decoded straight from the archive's
+     * mapped file into scratch arrays and processed into the template store, without building any Point objects.
+     * @param archive the archive holding the template gestures
+     * @return the number of templates added
+     * @throws IOException if a gesture in the archive is corrupt, in which case no templates are added
+     */
+    public int addTemplates(GestureArchive archive) throws IOException {
+        return addTemplates(archive, 1);
+    }
+
+    /**
+     * Creates a template from every gesture in an archive, decoding and processing them on up to the given number
+     * of threads. The new templates are published together once they are all processed.
+     * @param archive the archive holding the template gestures
+     * @param threads the most threads to use
+     * @return the number of templates added
+     * @throws IOException if a gesture in the archive is corrupt, in which case no templates are added
+     */
+    public int addTemplates(GestureArchive archive, int threads) throws IOException {
+        return addTemplates(archive.size(), threads, archive::read);
+    }
+
+    /**
+     * Creates a template from every gesture file in a directory, in file name order. Both xml files and files in
+     * the binary format are read, and each template is named after its file without the extension. Reading, parsing
+     * and processing the files runs on up to the given number of threads, and the new templates are published
+     * together once they are all processed, so a recognizer never sees part of the directory.
+     * @param directory the directory holding the template gestures
+     * @param threads the most threads to use
+     * @return the number of templates added
+     * @throws IOException if the directory or a file in it can't be read, in which case no templates are added
+     */
+    public int addTemplates(Path directory, int threads) throws IOException {
+        List<Path> files = IOManager.gestureFiles(directory);
+        return addTemplates(files.size(), threads, (index, points) -> IOManager.readGestureFile(files.get(index), points));
+    }
+
+    /**
+     * Reads gestures by index into a buffer
+     */
+    private interface GestureSource {
+        /**
+         * @return the gesture's name
+         */
+        String read(int index, PointBuffer points) throws IOException;
+    }
+
+    /**
+     * Processes count gestures in chunks on a fixed pool of at most the given number of threads, each chunk writing
+     * to its own part of shared arrays, then swaps in a new store holding the old templates followed by the new ones
+     */
+    private int addTemplates(int count, int threads, GestureSource source) throws IOException {
+        String[] names = new String[count];
+        double[] xs = new double[count*RESAMPLE_SIZE];
+        double[] ys = new double[count*RESAMPLE_SIZE];
+        int chunks = (count + INGEST_CHUNK_SIZE - 1)/INGEST_CHUNK_SIZE;
+        if (threads <= 1 || chunks <= 1) {
+            processTemplates(source, 0, count, names, xs, ys);
+        }
+        else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+            try {
+                List<Future<Void>> results = new ArrayList<>(chunks);
+                for (int from = 0; from < count; from += INGEST_CHUNK_SIZE) {
+                    int start = from;
+                    int end = Math.min(from + INGEST_CHUNK_SIZE, count);
+                    results.add(executor.submit(() -> {
+                        processTemplates(source, start, end, names, xs, ys);
+                        return null;
+                    }));
+                }
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while adding templates");
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        synchronized (writeLock) {
+            publish(store.withTemplates(names, xs, ys));
+        }
+        return count;
+    }
+
+    private void processTemplates(GestureSource source, int from, int to, String[] names, double[] xs, double[] ys) throws IOException {
+        ProcessedGesture gesture = scratch.get();
+        for (int i = from; i < to; i++) {
+            gesture.raw.clear();
+            names[i] = source.read(i, gesture.raw);
+            normalizer.normalize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), gesture);
+            System.arraycopy(gesture.xs, 0, xs, i*RESAMPLE_SIZE, RESAMPLE_SIZE);
+            System.arraycopy(gesture.ys, 0, ys, i*RESAMPLE_SIZE, RESAMPLE_SIZE);
+        }
+    }
+
+    /**
+     * Removes every template with the given name. Removed templates are skipped by later recognitions straight
+     * away, and their memory is given back once enough of the templates have been removed.
+     * @param name name of the templates to remove
+     * @return the number of templates removed
+     */
+    public int removeTemplate(String name){
+        synchronized (writeLock) {
+            int before = store.liveCount();
+            publish(store.without(name));
+            return before - store.liveCount();
+        }
+    }
+
+    /**
+     * Replaces every template with the given name by one new template. Recognitions see either the old templates
+     * or the new one, never neither.
+     * @param name name of the templates to replace
+     * @param points in the new template gesture's path
+     * @return true if there was a template with that name, false if the new template was simply added
+     */
+    public boolean replaceTemplate(String name, Deque<Point> points){
+        ProcessedGesture gesture = scratch.get();
+        gesture.raw.clear();
+        gesture.raw.addAll(points);
+        normalizer.normalize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), gesture);
+        synchronized (writeLock) {
+            TemplateStore current = store;
+            TemplateStore remaining = current.without(name);
+            publish(remaining.withTemplate(name, gesture.xs, gesture.ys));
+            return remaining != current;
+        }
+    }
+
+    /**
+     * @return the number of templates
+     */
+    @Override
+    public int getTemplateCount(){
+        return store.liveCount();
+    }
+
+    /**
+     * Saves the processed templates, along with the number of points, scale size and centre they were processed
+     * with, so they can be restored with loadTemplateSnapshot without being processed again
+     * @param file the snapshot file, which is replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void saveTemplateSnapshot(Path file) throws IOException {
+        TemplateSnapshot.write(file, store, SCALE_SIZE, CENTRE_POINT.getX(), CENTRE_POINT.getY());
+    }
+
+    /**
+     * Replaces all templates with those saved by saveTemplateSnapshot. The processed points are read in bulk, so
+     * this is far faster than adding the original gestures again.
+     * @param file the snapshot file
+     * @throws IOException if the file can't be read, or if it was saved by a recognizer that resamples to a
+     * different number of points, scales to a different size or centres on a different point. The templates are
+     * left unchanged.
+     */
+    public void loadTemplateSnapshot(Path file) throws IOException {
+        TemplateStore restored = TemplateSnapshot.read(file, RESAMPLE_SIZE, SCALE_SIZE, CENTRE_POINT.getX(), CENTRE_POINT.getY());
+        synchronized (writeLock) {
+            publish(restored);
+        }
     }
 
     /**
@@ -183,79 +507,297 @@ public class Recognizer {
         return translatedDeque;
     }
 
-    private Deque<Point> prepPoints(Deque<Point> originalPoints) {
-        Deque<Point> resampledDeque = resample(originalPoints, RESAMPLE_SIZE);
-        double pi = indicativeAngle(resampledDeque);
-        Deque<Point> rotatedDeque = rotateBy(resampledDeque, -pi);
-        Deque<Point> scaledDeque = scaleTo(rotatedDeque, SCALE_SIZE);
-        Deque<Point> processedPoints = translateTo(scaledDeque, CENTRE_POINT);
-        return processedPoints;
-    }
-
     /**
      * Passes the original deque through the required steps and compares it to all 
      * available templates to find the best match
      * @param originalPoints the deque of points that needs to be recognised
      * @return a BestMatch containing the template and score that the gesture is closest to
      */
+    @Override
     public BestMatch recognize(Deque<Point> originalPoints) {
-        Deque<Point> processedGesture = prepPoints(originalPoints);
+        ProcessedGesture gesture = scratch.get();
+        gesture.raw.clear();
+        gesture.raw.addAll(originalPoints);
+        BestMatch match = new BestMatch();
+        if (recognize(gesture.raw.xs(), gesture.raw.ys(), gesture.raw.size(), match)) {
+            return match;
+        }
+        return null;
+    }
+
+    /**
+     * Recognizes a gesture given as coordinate arrays and writes the closest template and its score into a
+     * match supplied by the caller. Processing uses scratch buffers kept per thread and the rotation search
+     * rotates points on the fly, so once a thread has warmed up this method does not allocate when the templates are
+     * scanned in full on the calling thread. It does allocate when the templates are scanned in parallel (see
+     * setParallelScan), when the cascade or the vantage-point tree narrows them down (see setCascade and
+     * setVantagePointIndex), both of which build their candidate lists afresh for every gesture, and while metrics
+     * are being recorded (see setMetrics).
+     * @param originalXs x coordinates of the gesture's points
+     * @param originalYs y coordinates of the gesture's points
+     * @param count the number of points in the gesture
+     * @param result match that is filled in with the closest template and its score
+     * @return true if a match was found, false if there are no templates
+     */
+    public boolean recognize(double[] originalXs, double[] originalYs, int count, BestMatch result) {
+        return recognize(originalXs, originalYs, count, Normalizer.pathLength(originalXs, originalYs, count), null, result);
+    }
+
+    /**
+     * Recognizes a gesture whose path length is already known, optionally comparing it with a likely template
+     * first. The likely template's distance is then the early-abandon bound from the start of the scan, which
+     * lets most other templates be abandoned quickly. Ties still go to the lowest slot, so the result is the same
+     * as without the hint.
+     * @param originalXs x coordinates of the gesture's points
+     * @param originalYs y coordinates of the gesture's points
+     * @param count the number of points in the gesture
+     * @param pathLength the length of the path through the gesture's points
+     * @param hint a template that is likely to be the closest, or null
+     * @param result match that is filled in with the closest template and its score
+     * @return true if a match was found, false if there are no templates
+     */
+    boolean recognize(double[] originalXs, double[] originalYs, int count, double pathLength, Template hint, BestMatch result) {
+        VantagePointIndex index = this.index;
+        TemplateStore store = this.store;
+        if (store.liveCount() == 0) {
+            return false;
+        }
+        RecognizerMetrics metrics = this.metrics;
+        ProcessedGesture gesture = scratch.get();
+        long start = metrics == null ? 0 : System.nanoTime();
+        normalizer.resample(originalXs, originalYs, count, pathLength, gesture);
+        long resampled = metrics == null ? 0 : System.nanoTime();
+        normalizer.align(gesture);
+        long aligned = metrics == null ? 0 : System.nanoTime();
+        ScanCounters counters = metrics == null ? null : new ScanCounters();
+
+        Cascade cascade = this.cascade;
+        int[] candidates = null;
+        if (index != null) {
+            candidates = index.candidates(gesture, store);
+        }
+        else if (cascade != null) {
+            candidates = cascade.candidates(gesture, store);
+        }
+        if (candidates == null && scanPool != null && store.liveCount() >= parallelThreshold) {
+            int partitionSize = Math.max(64, store.size()/(4*scanPool.getParallelism()));
+            ParallelScan scan = new ParallelScan(gesture, store, matcher, 0, store.size(), partitionSize, metrics != null);
+            scanPool.invoke(scan);
+            int closestSlot = scan.closestSlot < 0 ? store.firstLiveSlot() : scan.closestSlot;
+            result.set(store.get(closestSlot), matcher.score(scan.minDistance, SCALE_SIZE));
+            if (metrics != null) {
+                metrics.record(resampled - start, aligned - resampled, System.nanoTime() - aligned, scan.counters, store.liveCount());
+            }
+            return true;
+        }
+
         double minDistance = Double.MAX_VALUE;
-        if (templates.size() != 0) {
-            Template closestMatch = templates.get(0);
-            for (Template template : templates) {
-                Double distance = distanceAtBestAngle(processedGesture, template.getPoints());
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    closestMatch = template;
-                }
+        int closestSlot = store.firstLiveSlot();
+        int hintSlot = -1;
+        if (hint != null && hint.getSlot() >= 0 && hint.getSlot() < store.size() && store.get(hint.getSlot()).getId() == hint.getId() && !store.isRemoved(hint.getSlot())
+                && (candidates == null || contains(candidates, hint.getSlot()))) {
+            double hintDistance = matcher.distance(gesture, store, hint.getSlot(), Double.MAX_VALUE, counters);
+            if (hintDistance < minDistance) { // false for NaN, in which case the hint is scanned like any other template
+                minDistance = hintDistance;
+                closestSlot = hint.getSlot();
+                hintSlot = hint.getSlot();
             }
-            double score = 1 - (2*minDistance/Math.sqrt(2* Math.pow(SCALE_SIZE,2)));
-            BestMatch bestMatch = new BestMatch(closestMatch, score);
-            return bestMatch;
-        } else {
-            return null;
-        }        
-    }
-
-    /**
-     * Uses a golden section search to calculate rotation that minimizes the distance between the gesture and the template points.
-     * @param points
-     * @param templatePoints
-     * @return best distance
-     */
-    private double distanceAtBestAngle(Deque<Point> points, Deque<Point> templatePoints){
-        double thetaA = -Math.toRadians(45);
-        double thetaB = Math.toRadians(45);
-        final double deltaTheta = Math.toRadians(2);
-        double phi = 0.5*(-1.0 + Math.sqrt(5.0));// golden ratio
-        double x1 = phi*thetaA + (1-phi)*thetaB;
-        double f1 = distanceAtAngle(points, templatePoints, x1);
-        double x2 = (1 - phi)*thetaA + phi*thetaB;
-        double f2 = distanceAtAngle(points, templatePoints, x2);
-        while(Math.abs(thetaB-thetaA) > deltaTheta){
-            if (f1 < f2){
-                thetaB = x2;
-                x2 = x1;
-                f2 = f1;
-                x1 = phi*thetaA + (1-phi)*thetaB;
-                f1 = distanceAtAngle(points, templatePoints, x1);
+        }
+        if (candidates != null && hintSlot < 0) {
+            closestSlot = candidates[0];
+        }
+        int scanned = candidates == null ? store.size() : candidates.length;
+        for (int i = 0; i < scanned; i++) {
+            int slot = candidates == null ? i : candidates[i];
+            if (slot == hintSlot || store.isRemoved(slot)) {
+                continue;
             }
-            else{
-                thetaA = x1;
-                x1 = x2;
-                f1 = f2;
-                x2 = (1-phi)*thetaA + phi*thetaB;
-                f2 = distanceAtAngle(points, templatePoints, x2);
+            double distance = matcher.distance(gesture, store, slot, minDistance, counters);
+            if (distance < minDistance || (distance == minDistance && slot < closestSlot)) {
+                minDistance = distance;
+                closestSlot = slot;
             }
         }
-        return Math.min(f1, f2);
+        result.set(store.get(closestSlot), matcher.score(minDistance, SCALE_SIZE));
+        if (metrics != null) {
+            int compared = candidates == null ? store.liveCount() : candidates.length;
+            metrics.record(resampled - start, aligned - resampled, System.nanoTime() - aligned, counters, compared);
+        }
+        return true;
     }
 
-    private double distanceAtAngle(Deque<Point> points, Deque<Point> templatePoints, double theta){
-        Deque<Point> rotatedPoints = null;
-        rotatedPoints = rotateBy(points, theta);
-        return pathDistance(rotatedPoints, templatePoints);
+    /**
+     * Narrows down the templates a gesture has to be compared with in full, with the vantage-point tree if it is on
+     * and otherwise with the cascade if that is on
+     * @return the slots of the candidates, or null if every template has to be compared
+     */
+    private static int[] candidates(VantagePointIndex index, Cascade cascade, ProcessedGesture gesture, TemplateStore store) {
+        if (index != null) {
+            return index.candidates(gesture, store);
+        }
+        return cascade == null ? null : cascade.candidates(gesture, store);
+    }
+
+    private static boolean contains(int[] slots, int slot) {
+        for (int candidate : slots) {
+            if (candidate == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Starts recognizing a gesture while it is still being drawn. Points are fed to the session as they arrive, and
+     * it publishes a provisional match at most once per publishInterval.
+     * @param onProvisionalMatch called with the provisional match, or null if there are no templates
+     * @param publishIntervalMillis the shortest time between provisional matches
+     * @return a new session
+     */
+    public RecognitionSession startSession(Consumer<BestMatch> onProvisionalMatch, long publishIntervalMillis) {
+        return new RecognitionSession(this, onProvisionalMatch, publishIntervalMillis, null);
+    }
+
+    /**
+     * Starts recognizing a gesture while it is still being drawn, recognizing the provisional matches on an executor
+     * so the thread feeding points to the session is not held up. While a provisional match is being recognized,
+     * further ones are skipped until it is published.
+     * @param onProvisionalMatch called on the executor with the provisional match, or null if there are no templates
+     * @param publishIntervalMillis the shortest time between provisional matches
+     * @param executor runs the provisional recognitions, usually a single background thread
+     * @return a new session
+     */
+    public RecognitionSession startSession(Consumer<BestMatch> onProvisionalMatch, long publishIntervalMillis, Executor executor) {
+        return new RecognitionSession(this, onProvisionalMatch, publishIntervalMillis, executor);
+    }
+
+    /**
+     * Finds the k templates closest to a gesture in a single scan. The k best so far are kept in a bounded heap and
+     * the k-th best distance is the bound templates are abandoned against, so this costs about the same as
+     * recognize when k is small.
+     * @param originalPoints the deque of points that needs to be recognised
+     * @param k the number of matches to return
+     * @return up to k matches, best first. Empty if there are no templates.
+     */
+    public List<BestMatch> recognizeTopK(Deque<Point> originalPoints, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1 but was " + k);
+        }
+        List<BestMatch> matches = new ArrayList<>();
+        TemplateStore store = this.store;
+        if (store.liveCount() == 0) {
+            return matches;
+        }
+        RecognizerMetrics metrics = this.metrics;
+        ProcessedGesture gesture = scratch.get();
+        gesture.raw.clear();
+        gesture.raw.addAll(originalPoints);
+        double[] xs = gesture.raw.xs();
+        double[] ys = gesture.raw.ys();
+        int size = gesture.raw.size();
+        long start = metrics == null ? 0 : System.nanoTime();
+        normalizer.resample(xs, ys, size, Normalizer.pathLength(xs, ys, size), gesture);
+        long resampled = metrics == null ? 0 : System.nanoTime();
+        normalizer.align(gesture);
+        long aligned = metrics == null ? 0 : System.nanoTime();
+        ScanCounters counters = metrics == null ? null : new ScanCounters();
+
+        TopMatches top = new TopMatches(Math.min(k, store.liveCount()));
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.isRemoved(slot)) {
+                top.offer(slot, matcher.distance(gesture, store, slot, top.bound(), counters));
+            }
+        }
+        if (metrics != null) {
+            metrics.record(resampled - start, aligned - resampled, System.nanoTime() - aligned, counters, store.liveCount());
+        }
+        int[] slots = new int[top.size()];
+        double[] distances = new double[top.size()];
+        int count = top.drainSorted(slots, distances);
+        for (int i = 0; i < count; i++) {
+            matches.add(new BestMatch(store.get(slots[i]), matcher.score(distances[i], SCALE_SIZE)));
+        }
+        return matches;
+    }
+
+    /**
+     * Recognizes many gestures at once. All the gestures are processed up front, then blocks of gestures are
+     * compared against blocks of templates, so a block of templates stays in cache while every gesture in the
+     * block is compared with it instead of the whole template store streaming through once per gesture. Each
+     * gesture still sees the templates in order, so the results are the same as calling recognize on each one.
+     * While the vantage-point tree or the cascade is on, each gesture they narrow down is compared with only its
+     * candidates, just as in recognize, and only the rest go through the blocked scan.
+     * @param gestures the gestures that need to be recognised
+     * @return a BestMatch for each gesture, in the same order, or nulls if there are no templates
+     */
+    public List<BestMatch> recognizeAll(List<Deque<Point>> gestures) {
+        List<BestMatch> matches = new ArrayList<>(gestures.size());
+        VantagePointIndex index = this.index;
+        TemplateStore store = this.store;
+        if (store.liveCount() == 0) {
+            for (int i = 0; i < gestures.size(); i++) {
+                matches.add(null);
+            }
+            return matches;
+        }
+        ProcessedGesture[] processed = new ProcessedGesture[gestures.size()];
+        PointBuffer raw = new PointBuffer();
+        for (int i = 0; i < processed.length; i++) {
+            raw.clear();
+            raw.addAll(gestures.get(i));
+            processed[i] = new ProcessedGesture(RESAMPLE_SIZE);
+            normalizer.normalize(raw.xs(), raw.ys(), raw.size(), processed[i]);
+        }
+
+        double[] minDistances = new double[processed.length];
+        int[] closestSlots = new int[processed.length];
+        Arrays.fill(minDistances, Double.MAX_VALUE);
+        Arrays.fill(closestSlots, store.firstLiveSlot());
+        Cascade cascade = this.cascade;
+        boolean[] narrowed = new boolean[processed.length];
+        for (int query = 0; query < processed.length; query++) {
+            int[] candidates = candidates(index, cascade, processed[query], store);
+            if (candidates == null) {
+                continue;
+            }
+            narrowed[query] = true;
+            closestSlots[query] = candidates[0];
+            for (int slot : candidates) {
+                if (store.isRemoved(slot)) {
+                    continue;
+                }
+                double distance = matcher.distance(processed[query], store, slot, minDistances[query]);
+                if (distance < minDistances[query] || (distance == minDistances[query] && slot < closestSlots[query])) {
+                    minDistances[query] = distance;
+                    closestSlots[query] = slot;
+                }
+            }
+        }
+        for (int queryStart = 0; queryStart < processed.length; queryStart += QUERY_BLOCK_SIZE) {
+            int queryEnd = Math.min(queryStart + QUERY_BLOCK_SIZE, processed.length);
+            for (int templateStart = 0; templateStart < store.size(); templateStart += TEMPLATE_BLOCK_SIZE) {
+                int templateEnd = Math.min(templateStart + TEMPLATE_BLOCK_SIZE, store.size());
+                for (int query = queryStart; query < queryEnd; query++) {
+                    if (narrowed[query]) {
+                        continue;
+                    }
+                    for (int slot = templateStart; slot < templateEnd; slot++) {
+                        if (store.isRemoved(slot)) {
+                            continue;
+                        }
+                        double distance = matcher.distance(processed[query], store, slot, minDistances[query]);
+                        if (distance < minDistances[query]) {
+                            minDistances[query] = distance;
+                            closestSlots[query] = slot;
+                        }
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < processed.length; i++) {
+            matches.add(new BestMatch(store.get(closestSlots[i]), matcher.score(minDistances[i], SCALE_SIZE)));
+        }
+        return matches;
     }
 
     /**
@@ -0,0 +1,133 @@
+package comp128.gestureRecognizer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counters for a Recognizer, turned on with Recognizer.setMetrics. Records how long each gesture spent
+ * being resampled, being normalized (rotated, scaled and translated) and scanning the templates, along with how
+ * many templates were scanned, how many golden section iterations were run and how many templates were abandoned
+ * early. Recording is lock-free, and a recognizer without metrics only pays for a null check per gesture.
+ */
+public class RecognizerMetrics {
+    private final LatencyHistogram resample = new LatencyHistogram();
+    private final LatencyHistogram normalize = new LatencyHistogram();
+    private final LatencyHistogram scan = new LatencyHistogram();
+    private final LongAdder templatesScanned = new LongAdder();
+    private final LongAdder goldenSectionIterations = new LongAdder();
+    private final LongAdder earlyAbandons = new LongAdder();
+    private final boolean emitJfrEvents;
+
+    /**
+     * Creates metrics that are only kept in memory
+     */
+    public RecognizerMetrics() {
+        this(false);
+    }
+
+    /**
+     * Creates metrics
+     * @param emitJfrEvents whether to also emit a Java Flight Recorder event for every recognized gesture
+     */
+    public RecognizerMetrics(boolean emitJfrEvents) {
+        this.emitJfrEvents = emitJfrEvents;
+    }
+
+    /**
+     * Records one recognized gesture
+     * @param resampleNanos time spent resampling
+     * @param normalizeNanos time spent rotating, scaling and translating
+     * @param scanNanos time spent comparing with the templates
+     * @param counters what the matchers counted during the scan
+     * @param scanned the number of templates scanned
+     */
+    void record(long resampleNanos, long normalizeNanos, long scanNanos, ScanCounters counters, int scanned) {
+        resample.record(resampleNanos);
+        normalize.record(normalizeNanos);
+        scan.record(scanNanos);
+        templatesScanned.add(scanned);
+        goldenSectionIterations.add(counters.goldenSectionIterations);
+        earlyAbandons.add(counters.earlyAbandons);
+        if (emitJfrEvents) {
+            RecognitionEvent event = new RecognitionEvent();
+            if (event.shouldCommit()) {
+                event.resampleNanos = resampleNanos;
+                event.normalizeNanos = normalizeNanos;
+                event.scanNanos = scanNanos;
+                event.templatesScanned = scanned;
+                event.goldenSectionIterations = counters.goldenSectionIterations;
+                event.earlyAbandons = counters.earlyAbandons;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the metrics as they are now
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * An unchanging copy of a recognizer's metrics
+     */
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot resample;
+        private final LatencyHistogram.Snapshot normalize;
+        private final LatencyHistogram.Snapshot scan;
+        private final long templatesScanned;
+        private final long goldenSectionIterations;
+        private final long earlyAbandons;
+
+        private Snapshot(RecognizerMetrics metrics) {
+            resample = metrics.resample.snapshot();
+            normalize = metrics.normalize.snapshot();
+            scan = metrics.scan.snapshot();
+            templatesScanned = metrics.templatesScanned.sum();
+            goldenSectionIterations = metrics.goldenSectionIterations.sum();
+            earlyAbandons = metrics.earlyAbandons.sum();
+        }
+
+        /**
+         * @return time spent resampling each gesture
+         */
+        public LatencyHistogram.Snapshot getResample() {
+            return resample;
+        }
+
+        /**
+         * @return time spent rotating, scaling and translating each gesture
+         */
+        public LatencyHistogram.Snapshot getNormalize() {
+            return normalize;
+        }
+
+        /**
+         * @return time spent comparing each gesture with the templates
+         */
+        public LatencyHistogram.Snapshot getScan() {
+            return scan;
+        }
+
+        /**
+         * @return the total number of templates compared with a gesture
+         */
+        public long getTemplatesScanned() {
+            return templatesScanned;
+        }
+
+        /**
+         * @return the total number of golden section search iterations
+         */
+        public long getGoldenSectionIterations() {
+            return goldenSectionIterations;
+        }
+
+        /**
+         * @return the total number of templates abandoned before their search finished
+         */
+        public long getEarlyAbandons() {
+            return earlyAbandons;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package comp128.gestureRecognizer;
+
+/**
+ * Counts what matchers did while comparing one gesture with the templates, for RecognizerMetrics. Only made while
+ * metrics are on, and each thread scanning templates counts into its own, so the matchers never write to memory
+ * another thread is reading.
+ */
+final class ScanCounters {
+    /** golden section iterations run */
+    int goldenSectionIterations;
+    /** templates a matcher gave up on early */
+    int earlyAbandons;
+
+    /**
+     * Adds the counts of another scan to these
+     * @param other the counts to add
+     */
+    void add(ScanCounters other) {
+        goldenSectionIterations += other.goldenSectionIterations;
+        earlyAbandons += other.earlyAbandons;
+    }
+}
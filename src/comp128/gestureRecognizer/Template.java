@@ -1,38 +1,93 @@
 package comp128.gestureRecognizer;
 
 import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
 
 import Graphics.Point;
 
 /**
- * A class that contains the fully processed deque of points for a gesture as well as its name
- * so that it can be quickly used for the recogniser algorithm
+ * A class that contains the name of a template gesture and where its fully processed points live
+ * in the recognizer's template store, so that it can be quickly used for the recogniser algorithm.
+ * A template can also be created outside of any recognizer from a deque of points, which it holds as given.
  */
 public class Template {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private TemplateStore store;
+    private int slot;
+    private long id;
     private Deque<Point> points;
     private String name;
 
     /**
-     * creates a new template that contains a gesture's points and its name
+     * creates a new template that contains a gesture's points and its name, outside of any template store
      * @param gesture gesture that is being saved as a template
      * @param name name of the gesture
      */
     public Template(Deque<Point> gesture, String name) {
         points = gesture;
         this.name = name;
+        this.slot = -1;
+        this.id = NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * creates a new template whose processed points are held by a template store
+     * @param name name of the gesture
+     * @param store the store holding the template's points
+     * @param slot index of the template in the store
+     */
+    Template(String name, TemplateStore store, int slot) {
+        this.name = name;
+        this.store = store;
+        this.slot = slot;
+        this.id = NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * creates the same template in a store whose arrays are a copy of the original's, so that the
+     * original's arrays are not kept alive by the new store
+     * @param original the template in the store that was copied
+     * @param store the store holding the copied arrays, at the same slot
+     */
+    Template(Template original, TemplateStore store) {
+        this.name = original.name;
+        this.store = store;
+        this.slot = original.slot;
+        this.id = original.id;
     }
 
     /**
-     * @return a deque of points (the points of the template gesture)
+     * Builds a new deque from the packed points in the template store. This is a compatibility
+     * view; the recognizer itself reads the store directly.
+     * @return a deque of points (the points of the template gesture), or the deque the template was
+     * created with if it is not in a store
      */
     public Deque<Point> getPoints() {
-        return points;
+        if (store == null) {
+            return points;
+        }
+        return store.points(slot);
     }
-    
+
     /**
      * @return name of the template
      */
     public String getName() {
         return name;
     }
+
+    /**
+     * @return index of the template in its store, or -1 if it is not in a store
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return a number shared only by the copies of this template made when its store's arrays are copied
+     */
+    long getId() {
+        return id;
+    }
 }
@@ -0,0 +1,134 @@
+package comp128.gestureRecognizer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes a recognizer's processed templates, so a large library can be restored without running every
+ * template through the processing pipeline again. The layout is:
+ * <ul>
+ *     <li>a header: the magic bytes "GSTS", a version int, the number of points per template, the scale size and
+ *     centre point the templates were processed with, and the number of templates</li>
+ *     <li>each template's name as an int byte length followed by UTF-8 bytes</li>
+ *     <li>the packed x coordinates of every template, then the packed y coordinates</li>
+ * </ul>
+ * Everything is little-endian, so on most machines the coordinates are read back from the mapped file with one
+ * plain memory copy each.
+ */
+final class TemplateSnapshot {
+    private static final byte[] MAGIC = {'G', 'S', 'T', 'S'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 3*Integer.BYTES + 3*Double.BYTES;
+
+    private TemplateSnapshot() {
+    }
+
+    /**
+     * Writes the templates to a file. The snapshot is written next to the file first and then moved over it, so a
+     * reader never sees a half written snapshot. Removed templates are left out.
+     * @param file the snapshot file
+     * @param store the templates
+     * @param scaleSize the scale size the templates were processed with
+     * @param centreX x coordinate of the centre point the templates were processed with
+     * @param centreY y coordinate of the centre point the templates were processed with
+     * @throws IOException if the file can't be written
+     */
+    static void write(Path file, TemplateStore store, double scaleSize, double centreX, double centreY) throws IOException {
+        store = store.compact();
+        int count = store.size();
+        int n = store.pointsPerTemplate();
+        byte[][] names = new byte[count][];
+        long size = HEADER_SIZE + 2L*count*n*Double.BYTES;
+        for (int slot = 0; slot < count; slot++) {
+            names[slot] = store.get(slot).getName().getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + names[slot].length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Too many templates for one snapshot");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putInt(n).putDouble(scaleSize).putDouble(centreX).putDouble(centreY).putInt(count);
+        for (byte[] name : names) {
+            out.putInt(name.length).put(name);
+        }
+        out.asDoubleBuffer().put(store.xs(), 0, count*n).put(store.ys(), 0, count*n);
+        out.position(out.capacity()).flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads templates from a file
+     * @param file the snapshot file
+     * @param n the number of points per template the recognizer uses
+     * @param scaleSize the scale size the recognizer uses
+     * @param centreX x coordinate of the centre point the recognizer uses
+     * @param centreY y coordinate of the centre point the recognizer uses
+     * @return a new store holding the templates
+     * @throws IOException if the file can't be read, is not a snapshot, or was processed with different settings
+     */
+    static TemplateStore read(Path file, int n, double scaleSize, double centreX, double centreY) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Template snapshot is larger than 2GB");
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.remaining() < HEADER_SIZE) {
+            throw new IOException("Not a template snapshot");
+        }
+        for (byte magic : MAGIC) {
+            if (in.get() != magic) {
+                throw new IOException("Not a template snapshot");
+            }
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported template snapshot version " + version);
+        }
+        int snapshotN = in.getInt();
+        double snapshotScaleSize = in.getDouble();
+        double snapshotCentreX = in.getDouble();
+        double snapshotCentreY = in.getDouble();
+        if (snapshotN != n || snapshotScaleSize != scaleSize || snapshotCentreX != centreX || snapshotCentreY != centreY) {
+            throw new IOException("Template snapshot was processed with " + snapshotN + " points, scale size " + snapshotScaleSize
+                    + " and centre (" + snapshotCentreX + ", " + snapshotCentreY + ") but the recognizer uses " + n
+                    + " points, scale size " + scaleSize + " and centre (" + centreX + ", " + centreY + ")");
+        }
+        int count = in.getInt();
+        if (count < 0 || (long) count*(Integer.BYTES + 2L*n*Double.BYTES) > in.remaining()) {
+            throw new IOException("Template snapshot is truncated");
+        }
+        String[] names = new String[count];
+        for (int slot = 0; slot < count; slot++) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining() - 2L*count*n*Double.BYTES) {
+                throw new IOException("Template snapshot is truncated");
+            }
+            byte[] name = new byte[length];
+            in.get(name);
+            names[slot] = new String(name, StandardCharsets.UTF_8);
+        }
+        if (in.remaining() != 2L*count*n*Double.BYTES) {
+            throw new IOException("Template snapshot is truncated");
+        }
+        double[] xs = new double[count*n];
+        double[] ys = new double[count*n];
+        in.asDoubleBuffer().get(xs).get(ys);
+        return TemplateStore.of(n, names, xs, ys);
+    }
+}
@@ -0,0 +1,628 @@
+package comp128.gestureRecognizer;
+
+import Graphics.Point;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Packed storage for the processed points of every template in a recognizer.
+ * The coordinates of all templates live in one x array and one y array, with template i occupying
+ * the indices [i * pointsPerTemplate, (i + 1) * pointsPerTemplate), so the recognizer can scan the
+ * whole library linearly instead of walking a deque of Point objects per template.
+ * <p>
+ * A store never changes once created, so any number of threads can read it without locking. Adding templates
+ * creates a new store. The new store shares its arrays with the old one and writes the new templates into spare
+ * capacity past the end of the old one, which no reader of the old store ever looks at, so adding is amortized
+ * constant time per template like an ArrayList. The arrays are only copied when they are full, or when another
+ * store has already claimed the spare capacity.
+ * <p>
+ * Removing templates marks their slots as removed in a new store instead of moving the others, so slots stay
+ * stable and scans just skip removed slots. Once half the slots are removed the live templates are compacted into
+ * arrays sized for them, so a library that has shrunk gives its memory back.
+ * <p>
+ * A store can also keep arrays worked out from each template's points, which only some recognizers read, in
+ * columns beside the slab that are shared and grown the same way. They are only built once asked for, and the
+ * stores grown from that one keep them up to date:
+ * <ul>
+ *     <li>withCoarseLevels keeps every template at the coarser resolutions in COARSE_SIZES, subsampled from its
+ *     processed points, for the cascade to rank templates cheaply before comparing the best of them in full.</li>
+ *     <li>withEnvelopes keeps the box around each point and the points up to ENVELOPE_BAND places either side of
+ *     it, for DtwMatcher's LB_Keogh bound.</li>
+ * </ul>
+ */
+class TemplateStore {
+    private static final int INITIAL_CAPACITY = 16;
+    /** number of points in each coarse level, coarsest first */
+    static final int[] COARSE_SIZES = {8, 16};
+    /** how many places either side of each point the envelopes reach */
+    static final int ENVELOPE_BAND = DtwMatcher.DEFAULT_BAND;
+
+    private final int pointsPerTemplate;
+    private final Slab slab;
+    private final int size;
+    /** bit i is set if slot i has been removed, or null if none have. Never changed once the store is created. */
+    private final long[] removed;
+    private final int removedCount;
+    /** x and then y coordinates at each coarse level, or null if they are not kept */
+    private final Columns coarse;
+    /** lowest x, highest x, lowest y and highest y around each point, or null if they are not kept */
+    private final Columns envelopes;
+
+    /**
+     * Arrays shared by every store that was grown from the same original, along with how many templates have
+     * been written into them
+     */
+    private static final class Slab {
+        final double[] xs;
+        final double[] ys;
+        final double[] radii;
+        final double[] magnitudes;
+        final Template[] templates;
+        private int used;
+
+        Slab(int pointsPerTemplate, int capacity) {
+            this(new double[capacity * pointsPerTemplate], new double[capacity * pointsPerTemplate], capacity);
+        }
+
+        Slab(double[] xs, double[] ys, int capacity) {
+            this.xs = xs;
+            this.ys = ys;
+            radii = new double[xs.length];
+            magnitudes = new double[capacity];
+            templates = new Template[capacity];
+        }
+
+        int capacity() {
+            return templates.length;
+        }
+
+        /**
+         * Claims the slots [from, to) if nothing has been written past from yet and they fit
+         * @return true if the slots can be written
+         */
+        synchronized boolean claim(int from, int to) {
+            if (used != from || to > capacity()) {
+                return false;
+            }
+            used = to;
+            return true;
+        }
+
+        /**
+         * Copies the first count templates into a new slab, with the slots up to used already claimed
+         */
+        Slab copy(int pointsPerTemplate, int count, int capacity, int used) {
+            Slab copy = new Slab(pointsPerTemplate, capacity);
+            System.arraycopy(xs, 0, copy.xs, 0, count * pointsPerTemplate);
+            System.arraycopy(ys, 0, copy.ys, 0, count * pointsPerTemplate);
+            System.arraycopy(radii, 0, copy.radii, 0, count * pointsPerTemplate);
+            System.arraycopy(magnitudes, 0, copy.magnitudes, 0, count);
+            System.arraycopy(templates, 0, copy.templates, 0, count);
+            copy.used = used;
+            return copy;
+        }
+    }
+
+    /**
+     * Optional arrays shared by every store grown from the same original, like a slab. Column c holds widths[c]
+     * values for each slot.
+     */
+    private static final class Columns {
+        final int[] widths;
+        final double[][] values;
+        final int capacity;
+        private int used;
+
+        Columns(int[] widths, int capacity) {
+            this.widths = widths;
+            this.capacity = capacity;
+            values = new double[widths.length][];
+            for (int column = 0; column < widths.length; column++) {
+                values[column] = new double[capacity*widths[column]];
+            }
+        }
+
+        /**
+         * Claims the slots [from, to) if nothing has been written past from yet and they fit
+         * @return true if the slots can be written
+         */
+        synchronized boolean claim(int from, int to) {
+            if (used != from || to > capacity) {
+                return false;
+            }
+            used = to;
+            return true;
+        }
+
+        /**
+         * Copies the first count slots into new columns, with the slots up to used already claimed
+         */
+        Columns copy(int count, int capacity, int used) {
+            Columns copy = new Columns(widths, capacity);
+            for (int column = 0; column < widths.length; column++) {
+                System.arraycopy(values[column], 0, copy.values[column], 0, count*widths[column]);
+            }
+            copy.used = used;
+            return copy;
+        }
+
+        /**
+         * Copies one slot's values into a slot of other columns of the same widths
+         */
+        void copySlot(int slot, Columns to, int toSlot) {
+            for (int column = 0; column < widths.length; column++) {
+                int width = widths[column];
+                System.arraycopy(values[column], slot*width, to.values[column], toSlot*width, width);
+            }
+        }
+
+        /**
+         * Makes columns for a grown store: these ones if the new slots can be claimed in them, or else a copy
+         */
+        static Columns grown(Columns columns, int size, int newSize, int capacity) {
+            if (columns == null || columns.claim(size, newSize)) {
+                return columns;
+            }
+            return columns.copy(size, capacity, newSize);
+        }
+    }
+
+    /**
+     * Creates an empty store for templates with the given number of points each
+     * @param pointsPerTemplate number of points every stored template has
+     */
+    TemplateStore(int pointsPerTemplate) {
+        this(pointsPerTemplate, new Slab(pointsPerTemplate, INITIAL_CAPACITY), 0, null, 0, null, null);
+    }
+
+    private TemplateStore(int pointsPerTemplate, Slab slab, int size, long[] removed, int removedCount, Columns coarse, Columns envelopes) {
+        this.pointsPerTemplate = pointsPerTemplate;
+        this.slab = slab;
+        this.size = size;
+        this.removed = removed;
+        this.removedCount = removedCount;
+        this.coarse = coarse;
+        this.envelopes = envelopes;
+    }
+
+    /**
+     * Creates a store that takes over arrays of already processed points, without copying them
+     * @param pointsPerTemplate number of points every stored template has
+     * @param names name of each template
+     * @param xs packed x coordinates of every template, pointsPerTemplate for each name
+     * @param ys packed y coordinates of every template, pointsPerTemplate for each name
+     * @return the new store
+     */
+    static TemplateStore of(int pointsPerTemplate, String[] names, double[] xs, double[] ys) {
+        if (xs.length != names.length * pointsPerTemplate || ys.length != xs.length) {
+            throw new IllegalArgumentException("Expected " + names.length * pointsPerTemplate + " points but got " + xs.length);
+        }
+        Slab slab = new Slab(xs, ys, names.length);
+        slab.claim(0, names.length);
+        TemplateStore store = new TemplateStore(pointsPerTemplate, slab, names.length, null, 0, null, null);
+        for (int slot = 0; slot < names.length; slot++) {
+            store.describe(slot, names[slot]);
+        }
+        return store;
+    }
+
+    /**
+     * Creates a new store holding this store's templates followed by one more already processed template
+     * @param name name of the template
+     * @param templateXs x coordinates of the processed points, exactly pointsPerTemplate of them
+     * @param templateYs y coordinates of the processed points, exactly pointsPerTemplate of them
+     * @return the new store. Its last template is the new one.
+     */
+    TemplateStore withTemplate(String name, double[] templateXs, double[] templateYs) {
+        if (templateXs.length != pointsPerTemplate || templateYs.length != pointsPerTemplate) {
+            throw new IllegalArgumentException("Expected " + pointsPerTemplate + " points but got " + templateXs.length);
+        }
+        return withTemplates(new String[] {name}, templateXs, templateYs);
+    }
+
+    /**
+     * Creates a new store holding this store's templates followed by more already processed templates. The
+     * existing Template objects are shared while the arrays are, and when the arrays have to be copied the new store
+     * gets copies of them with the same ids, so nothing in the new store keeps the old arrays alive.
+     * @param names name of each new template
+     * @param newXs packed x coordinates of the new templates, pointsPerTemplate for each name
+     * @param newYs packed y coordinates of the new templates, pointsPerTemplate for each name
+     * @return the new store
+     */
+    TemplateStore withTemplates(String[] names, double[] newXs, double[] newYs) {
+        if (newXs.length != names.length * pointsPerTemplate || newYs.length != newXs.length) {
+            throw new IllegalArgumentException("Expected " + names.length * pointsPerTemplate + " points but got " + newXs.length);
+        }
+        int newSize = size + names.length;
+        Slab target = slab;
+        if (!slab.claim(size, newSize)) {
+            target = slab.copy(pointsPerTemplate, size, Math.max(newSize, slab.capacity() * 2), newSize);
+        }
+        TemplateStore grown = new TemplateStore(pointsPerTemplate, target, newSize, removed, removedCount,
+                Columns.grown(coarse, size, newSize, target.capacity()), Columns.grown(envelopes, size, newSize, target.capacity()));
+        if (target != slab) {
+            for (int slot = 0; slot < size; slot++) {
+                target.templates[slot] = new Template(target.templates[slot], grown);
+            }
+        }
+        System.arraycopy(newXs, 0, target.xs, offset(size), newXs.length);
+        System.arraycopy(newYs, 0, target.ys, offset(size), newYs.length);
+        for (int i = 0; i < names.length; i++) {
+            grown.describe(size + i, names[i]);
+        }
+        return grown;
+    }
+
+    /**
+     * Creates a new store without any template with the given name. The removed slots are skipped from then on,
+     * and once half the slots are removed the store is compacted.
+     * @param name name of the templates to remove
+     * @return the new store, or this store if it has no template with that name
+     */
+    TemplateStore without(String name) {
+        long[] newRemoved = null;
+        int newRemovedCount = removedCount;
+        for (int slot = 0; slot < size; slot++) {
+            if (!isRemoved(slot) && get(slot).getName().equals(name)) {
+                if (newRemoved == null) {
+                    newRemoved = new long[(size + 63) >>> 6];
+                    if (removed != null) {
+                        System.arraycopy(removed, 0, newRemoved, 0, removed.length);
+                    }
+                }
+                newRemoved[slot >>> 6] |= 1L << slot;
+                newRemovedCount++;
+            }
+        }
+        if (newRemoved == null) {
+            return this;
+        }
+        TemplateStore store = new TemplateStore(pointsPerTemplate, slab, size, newRemoved, newRemovedCount, coarse, envelopes);
+        return 2*newRemovedCount >= size ? store.compact() : store;
+    }
+
+    /**
+     * Creates a new store holding only the live templates, in the same order, in arrays just big enough for them.
+     * The live templates get new Template objects because their slots change.
+     * @return the new store, or this store if no template has been removed
+     */
+    TemplateStore compact() {
+        if (removedCount == 0) {
+            return this;
+        }
+        int live = liveCount();
+        Slab compacted = new Slab(pointsPerTemplate, Math.max(live, INITIAL_CAPACITY));
+        compacted.claim(0, live);
+        Columns compactedCoarse = coarse == null ? null : new Columns(coarse.widths, compacted.capacity());
+        Columns compactedEnvelopes = envelopes == null ? null : new Columns(envelopes.widths, compacted.capacity());
+        for (Columns columns : new Columns[] {compactedCoarse, compactedEnvelopes}) {
+            if (columns != null) {
+                columns.claim(0, live);
+            }
+        }
+        TemplateStore store = new TemplateStore(pointsPerTemplate, compacted, live, null, 0, compactedCoarse, compactedEnvelopes);
+        int next = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (isRemoved(slot)) {
+                continue;
+            }
+            System.arraycopy(slab.xs, offset(slot), compacted.xs, offset(next), pointsPerTemplate);
+            System.arraycopy(slab.ys, offset(slot), compacted.ys, offset(next), pointsPerTemplate);
+            System.arraycopy(slab.radii, offset(slot), compacted.radii, offset(next), pointsPerTemplate);
+            compacted.magnitudes[next] = slab.magnitudes[slot];
+            if (coarse != null) {
+                coarse.copySlot(slot, compactedCoarse, next);
+            }
+            if (envelopes != null) {
+                envelopes.copySlot(slot, compactedEnvelopes, next);
+            }
+            compacted.templates[next] = new Template(get(slot).getName(), store, next);
+            next++;
+        }
+        return store;
+    }
+
+    /**
+     * Creates a store holding the same templates that also keeps them at the coarse levels, for the cascade
+     * @return the new store, or this store if it already keeps them
+     */
+    TemplateStore withCoarseLevels() {
+        if (coarse != null) {
+            return this;
+        }
+        int[] widths = new int[2*COARSE_SIZES.length];
+        for (int level = 0; level < COARSE_SIZES.length; level++) {
+            widths[2*level] = COARSE_SIZES[level];
+            widths[2*level + 1] = COARSE_SIZES[level];
+        }
+        Columns columns = new Columns(widths, slab.capacity());
+        columns.claim(0, size);
+        TemplateStore store = new TemplateStore(pointsPerTemplate, slab, size, removed, removedCount, columns, envelopes);
+        for (int slot = 0; slot < size; slot++) {
+            store.describeCoarseLevels(slot);
+        }
+        return store;
+    }
+
+    /**
+     * @return a store holding the same templates that doesn't keep them at the coarse levels, or this store if it
+     * doesn't already
+     */
+    TemplateStore withoutCoarseLevels() {
+        return coarse == null ? this : new TemplateStore(pointsPerTemplate, slab, size, removed, removedCount, null, envelopes);
+    }
+
+    /**
+     * Creates a store holding the same templates that also keeps their envelopes, for DtwMatcher
+     * @return the new store, or this store if it already keeps them
+     */
+    TemplateStore withEnvelopes() {
+        if (envelopes != null) {
+            return this;
+        }
+        int n = pointsPerTemplate;
+        Columns columns = new Columns(new int[] {n, n, n, n}, slab.capacity());
+        columns.claim(0, size);
+        TemplateStore store = new TemplateStore(pointsPerTemplate, slab, size, removed, removedCount, coarse, columns);
+        for (int slot = 0; slot < size; slot++) {
+            store.describeEnvelopes(slot);
+        }
+        return store;
+    }
+
+    /**
+     * @return a store holding the same templates that doesn't keep their envelopes, or this store if it doesn't
+     * already
+     */
+    TemplateStore withoutEnvelopes() {
+        return envelopes == null ? this : new TemplateStore(pointsPerTemplate, slab, size, removed, removedCount, coarse, null);
+    }
+
+    /**
+     * Fills in the radii, magnitude, Template object and any kept coarse levels and envelopes of a slot whose points
+     * have been written
+     */
+    private void describe(int slot, String name) {
+        double[] xs = slab.xs;
+        double[] ys = slab.ys;
+        double sum = 0;
+        for (int i = offset(slot); i < offset(slot + 1); i++) {
+            slab.radii[i] = Math.sqrt(xs[i]*xs[i] + ys[i]*ys[i]);
+            sum += xs[i]*xs[i] + ys[i]*ys[i];
+        }
+        slab.magnitudes[slot] = Math.sqrt(sum);
+        if (coarse != null) {
+            describeCoarseLevels(slot);
+        }
+        if (envelopes != null) {
+            describeEnvelopes(slot);
+        }
+        slab.templates[slot] = new Template(name, this, slot);
+    }
+
+    private void describeCoarseLevels(int slot) {
+        for (int level = 0; level < COARSE_SIZES.length; level++) {
+            int m = COARSE_SIZES[level];
+            subsample(slab.xs, slab.ys, offset(slot), pointsPerTemplate, coarse.values[2*level], coarse.values[2*level + 1], slot*m, m);
+        }
+    }
+
+    private void describeEnvelopes(int slot) {
+        envelope(slab.xs, offset(slot), pointsPerTemplate, ENVELOPE_BAND, envelopes.values[0], envelopes.values[1]);
+        envelope(slab.ys, offset(slot), pointsPerTemplate, ENVELOPE_BAND, envelopes.values[2], envelopes.values[3]);
+    }
+
+    /**
+     * Picks m points spread evenly through n processed points, always including the first and last. Processed
+     * points are evenly spaced along the path, so the picked points are too.
+     * @param xs x coordinates of the processed points
+     * @param ys y coordinates of the processed points
+     * @param from index of the first processed point
+     * @param n the number of processed points
+     * @param coarseXs receives the x coordinates of the picked points
+     * @param coarseYs receives the y coordinates of the picked points
+     * @param to index the first picked point is written at
+     * @param m the number of points to pick
+     */
+    static void subsample(double[] xs, double[] ys, int from, int n, double[] coarseXs, double[] coarseYs, int to, int m) {
+        for (int i = 0; i < m; i++) {
+            int source = from + (int) Math.round((double) i*(n - 1)/(m - 1));
+            coarseXs[to + i] = xs[source];
+            coarseYs[to + i] = ys[source];
+        }
+    }
+
+    /**
+     * Finds the smallest and largest of the coordinates up to band places either side of each of n coordinates
+     * @param coordinates the coordinates
+     * @param from index of the first coordinate
+     * @param n the number of coordinates
+     * @param band how many places either side to look
+     * @param lower receives the smallest coordinate around each one, at the same index
+     * @param upper receives the largest coordinate around each one, at the same index
+     */
+    static void envelope(double[] coordinates, int from, int n, int band, double[] lower, double[] upper) {
+        for (int i = 0; i < n; i++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = Math.max(0, i - band); j <= Math.min(n - 1, i + band); j++) {
+                min = Math.min(min, coordinates[from + j]);
+                max = Math.max(max, coordinates[from + j]);
+            }
+            lower[from + i] = min;
+            upper[from + i] = max;
+        }
+    }
+
+    /**
+     * @return the number of slots in the store, including removed ones. Scans go over slots [0, size()) and skip
+     * the removed ones.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of templates that have not been removed
+     */
+    int liveCount() {
+        return size - removedCount;
+    }
+
+    /**
+     * @param slot index of a template in the store
+     * @return true if the template has been removed and must be skipped
+     */
+    boolean isRemoved(int slot) {
+        return removed != null && (slot >>> 6) < removed.length && (removed[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return the first slot that has not been removed, or 0 if there is none
+     */
+    int firstLiveSlot() {
+        int slot = 0;
+        while (slot < size && isRemoved(slot)) {
+            slot++;
+        }
+        return slot < size ? slot : 0;
+    }
+
+    /**
+     * @return the number of templates the store's arrays can hold
+     */
+    int capacity() {
+        return slab.capacity();
+    }
+
+    /**
+     * @return the number of points every template has
+     */
+    int pointsPerTemplate() {
+        return pointsPerTemplate;
+    }
+
+    /**
+     * @param slot index of a template in the store
+     * @return the template stored at that index
+     */
+    Template get(int slot) {
+        return slab.templates[slot];
+    }
+
+    /**
+     * @param slot index of a template in the store
+     * @return the index of the template's first point in xs() and ys()
+     */
+    int offset(int slot) {
+        return slot * pointsPerTemplate;
+    }
+
+    /**
+     * @return the packed x coordinates of every template. The array may be longer than needed.
+     */
+    double[] xs() {
+        return slab.xs;
+    }
+
+    /**
+     * @return the packed y coordinates of every template. The array may be longer than needed.
+     */
+    double[] ys() {
+        return slab.ys;
+    }
+
+    /**
+     * @return the distance of every template point from the origin, packed the same way as xs() and ys()
+     */
+    double[] radii() {
+        return slab.radii;
+    }
+
+    /**
+     * @return true if the store keeps its templates at the coarse levels
+     */
+    boolean hasCoarseLevels() {
+        return coarse != null;
+    }
+
+    /**
+     * @param level index of a coarse level in COARSE_SIZES
+     * @return the packed x coordinates of every template at that level, COARSE_SIZES[level] for each slot. Only
+     * kept after withCoarseLevels.
+     */
+    double[] coarseXs(int level) {
+        return coarse.values[2*level];
+    }
+
+    /**
+     * @param level index of a coarse level in COARSE_SIZES
+     * @return the packed y coordinates of every template at that level, COARSE_SIZES[level] for each slot. Only
+     * kept after withCoarseLevels.
+     */
+    double[] coarseYs(int level) {
+        return coarse.values[2*level + 1];
+    }
+
+    /**
+     * @return true if the store keeps the envelopes of its templates
+     */
+    boolean hasEnvelopes() {
+        return envelopes != null;
+    }
+
+    /**
+     * @return the smallest x coordinate within ENVELOPE_BAND places of every template point, packed the same way
+     * as xs(). Only kept after withEnvelopes.
+     */
+    double[] lowerXs() {
+        return envelopes.values[0];
+    }
+
+    /**
+     * @return the largest x coordinate within ENVELOPE_BAND places of every template point, packed the same way
+     * as xs(). Only kept after withEnvelopes.
+     */
+    double[] upperXs() {
+        return envelopes.values[1];
+    }
+
+    /**
+     * @return the smallest y coordinate within ENVELOPE_BAND places of every template point, packed the same way
+     * as ys(). Only kept after withEnvelopes.
+     */
+    double[] lowerYs() {
+        return envelopes.values[2];
+    }
+
+    /**
+     * @return the largest y coordinate within ENVELOPE_BAND places of every template point, packed the same way
+     * as ys(). Only kept after withEnvelopes.
+     */
+    double[] upperYs() {
+        return envelopes.values[3];
+    }
+
+    /**
+     * @param slot index of a template in the store
+     * @return the length of the template's points taken as one vector, measured from the origin
+     */
+    double magnitude(int slot) {
+        return slab.magnitudes[slot];
+    }
+
+    /**
+     * Builds a new deque holding the points of one template
+     * @param slot index of a template in the store
+     * @return a deque of the template's points
+     */
+    Deque<Point> points(int slot) {
+        Deque<Point> points = new ArrayDeque<>(pointsPerTemplate);
+        int start = offset(slot);
+        for (int i = start; i < start + pointsPerTemplate; i++) {
+            points.add(new Point(slab.xs[i], slab.ys[i]));
+        }
+        return points;
+    }
+}
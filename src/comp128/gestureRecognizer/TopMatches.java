@@ -0,0 +1,102 @@
+package comp128.gestureRecognizer;
+
+/**
+ * Keeps the k closest templates seen during a scan of the template store in a bounded heap. The root
+ * of the heap is the worst of the k kept so far, so its distance is the bound a new template has to beat
+ * to get in, which lets the matcher abandon templates early just like when only the best match is kept.
+ * Templates are expected to be offered in increasing slot order, so a tie is won by the lower slot.
+ */
+class TopMatches {
+    private final int[] slots;
+    private final double[] distances;
+    private int size;
+
+    /**
+     * Creates an empty heap that keeps the k closest templates
+     * @param k the number of templates to keep
+     */
+    TopMatches(int k) {
+        slots = new int[k];
+        distances = new double[k];
+    }
+
+    /**
+     * @return the distance a template has to beat to be kept
+     */
+    double bound() {
+        return size < slots.length ? Double.MAX_VALUE : distances[0];
+    }
+
+    /**
+     * Keeps the template if it is closer than the worst one kept so far, or if fewer than k are kept
+     * @param slot index of the template in the store
+     * @param distance distance between the gesture and the template
+     */
+    void offer(int slot, double distance) {
+        if (size < slots.length) {
+            int i = size++;
+            while (i > 0 && (distance > distances[(i - 1)/2] || (distance == distances[(i - 1)/2] && slot > slots[(i - 1)/2]))) {
+                slots[i] = slots[(i - 1)/2];
+                distances[i] = distances[(i - 1)/2];
+                i = (i - 1)/2;
+            }
+            slots[i] = slot;
+            distances[i] = distance;
+        } else if (distance < distances[0]) {
+            siftDown(slot, distance);
+        }
+    }
+
+    /**
+     * Replaces the root with the given template and moves it down until the heap is ordered again
+     */
+    private void siftDown(int slot, double distance) {
+        int i = 0;
+        while (2*i + 1 < size) {
+            int child = 2*i + 1;
+            if (child + 1 < size && worse(child + 1, child)) {
+                child++;
+            }
+            if (distances[child] < distance || (distances[child] == distance && slots[child] < slot)) {
+                break;
+            }
+            slots[i] = slots[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        slots[i] = slot;
+        distances[i] = distance;
+    }
+
+    /**
+     * @return true if the template at heap index a is further from the gesture than the one at b,
+     * with ties broken by the higher slot being worse
+     */
+    private boolean worse(int a, int b) {
+        return distances[a] > distances[b] || (distances[a] == distances[b] && slots[a] > slots[b]);
+    }
+
+    /**
+     * @return the number of templates kept
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap, writing the kept templates into the given arrays from closest to furthest
+     * @param sortedSlots receives the slots of the kept templates
+     * @param sortedDistances receives the distances of the kept templates
+     * @return the number of templates written
+     */
+    int drainSorted(int[] sortedSlots, double[] sortedDistances) {
+        int count = size;
+        while (size > 0) {
+            size--;
+            sortedSlots[size] = slots[0];
+            sortedDistances[size] = distances[0];
+            siftDown(slots[size], distances[size]);
+        }
+        return count;
+    }
+}
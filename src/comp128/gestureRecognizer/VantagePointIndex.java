@@ -0,0 +1,246 @@
+package comp128.gestureRecognizer;
+
+import java.util.Arrays;
+
+/**
+ * A vantage-point tree over the processed templates, used to find the templates nearest to a gesture without
+ * comparing it with all of them. The distance is the average distance between corresponding processed points with
+ * no rotation, which is a metric, so the triangle inequality rules out whole subtrees: every template inside a
+ * node is within its radius of the node's vantage point and every template outside is not. The nearest templates
+ * by this distance are only candidates, since the golden section search can then rotate the gesture closer to a
+ * template that ranked lower.
+ * <p>
+ * The tree is never changed once built. Adding templates copies the path from the root to the leaf each one goes
+ * in, so an index can be updated for every new template store and shared between threads like the stores are.
+ */
+final class VantagePointIndex {
+    /** the most templates a leaf holds before it is split */
+    private static final int LEAF_SIZE = 16;
+
+    private final int candidates;
+    private final TemplateStore store;
+    private final Node root;
+
+    /**
+     * A node of the tree: either a leaf holding a few slots, or a vantage point with the templates closer than
+     * radius to it inside and the rest outside
+     */
+    private static final class Node {
+        final int vantage;
+        final double radius;
+        final Node inside;
+        final Node outside;
+        final int[] leaf;
+
+        Node(int vantage, double radius, Node inside, Node outside) {
+            this.vantage = vantage;
+            this.radius = radius;
+            this.inside = inside;
+            this.outside = outside;
+            this.leaf = null;
+        }
+
+        Node(int[] leaf) {
+            this.vantage = -1;
+            this.radius = 0;
+            this.inside = null;
+            this.outside = null;
+            this.leaf = leaf;
+        }
+    }
+
+    /**
+     * Builds an index over every template in a store
+     * @param candidates the number of nearest templates to find, at least 1
+     * @param store the store holding the processed templates
+     */
+    VantagePointIndex(int candidates, TemplateStore store) {
+        if (candidates < 1) {
+            throw new IllegalArgumentException("Candidates must be at least 1 but was " + candidates);
+        }
+        int[] slots = new int[store.liveCount()];
+        int count = 0;
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (!store.isRemoved(slot)) {
+                slots[count++] = slot;
+            }
+        }
+        this.candidates = candidates;
+        this.store = store;
+        this.root = build(store, slots, new double[slots.length]);
+    }
+
+    private VantagePointIndex(int candidates, TemplateStore store, Node root) {
+        this.candidates = candidates;
+        this.store = store;
+        this.root = root;
+    }
+
+    /**
+     * @return the number of nearest templates the index finds
+     */
+    int getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Creates an index over a newer template store. Templates added since this index was made are put in the tree,
+     * and removed ones are left in it to be skipped while searching. If the newer store numbers its templates
+     * differently, for example after being compacted, the tree is built again.
+     * @param newer the store to index
+     * @return the new index
+     */
+    VantagePointIndex updatedFor(TemplateStore newer) {
+        if (!covers(newer)) {
+            return new VantagePointIndex(candidates, newer);
+        }
+        Node newRoot = root;
+        for (int slot = store.size(); slot < newer.size(); slot++) {
+            if (!newer.isRemoved(slot)) {
+                newRoot = insert(newRoot, newer, slot);
+            }
+        }
+        return new VantagePointIndex(candidates, newer, newRoot);
+    }
+
+    /**
+     * @return true if every slot in this index holds the same template in the given store. Stores keep the ids of
+     * the templates in the stores they grew from, and compacting or loading makes new ones.
+     */
+    private boolean covers(TemplateStore other) {
+        int size = store.size();
+        return size == 0 || (size <= other.size() && other.get(size - 1).getId() == store.get(size - 1).getId());
+    }
+
+    /**
+     * Finds the templates nearest to a gesture
+     * @param gesture the processed gesture
+     * @param current the store the gesture is being recognized against, which may have grown since the index was
+     * made
+     * @return the slots of the nearest templates, nearest first, or null if the store can't be narrowed down with
+     * this index
+     */
+    int[] candidates(ProcessedGesture gesture, TemplateStore current) {
+        if (!covers(current) || current.liveCount() <= candidates) {
+            return null;
+        }
+        TopMatches top = new TopMatches(candidates);
+        search(root, gesture, current, top);
+        int[] slots = new int[top.size()];
+        int count = top.drainSorted(slots, new double[slots.length]);
+        return count == slots.length ? slots : Arrays.copyOf(slots, count);
+    }
+
+    /**
+     * Searches the closer side of each node first, and the other side only if the triangle inequality allows a
+     * template there to beat the furthest kept so far
+     */
+    private static void search(Node node, ProcessedGesture gesture, TemplateStore current, TopMatches top) {
+        double[] xs = current.xs();
+        double[] ys = current.ys();
+        int n = current.pointsPerTemplate();
+        if (node.leaf != null) {
+            for (int slot : node.leaf) {
+                if (!current.isRemoved(slot)) {
+                    double bound = top.bound();
+                    double distance = distance(gesture.xs, gesture.ys, 0, xs, ys, current.offset(slot), n, bound);
+                    if (distance < bound) {
+                        top.offer(slot, distance);
+                    }
+                }
+            }
+            return;
+        }
+        double distance = distance(gesture.xs, gesture.ys, 0, xs, ys, current.offset(node.vantage), n, Double.POSITIVE_INFINITY);
+        if (!current.isRemoved(node.vantage)) {
+            top.offer(node.vantage, distance);
+        }
+        if (distance < node.radius) {
+            search(node.inside, gesture, current, top);
+            if (distance + top.bound() >= node.radius) {
+                search(node.outside, gesture, current, top);
+            }
+        }
+        else {
+            search(node.outside, gesture, current, top);
+            if (distance - top.bound() < node.radius) {
+                search(node.inside, gesture, current, top);
+            }
+        }
+    }
+
+    /**
+     * Builds a subtree over the given slots. The first slot is the vantage point, and the median distance of the
+     * others from it is the radius.
+     * @param distances scratch space at least as long as slots
+     */
+    private static Node build(TemplateStore store, int[] slots, double[] distances) {
+        if (slots.length <= LEAF_SIZE) {
+            return new Node(slots);
+        }
+        int vantage = slots[0];
+        int n = store.pointsPerTemplate();
+        int others = slots.length - 1;
+        for (int i = 0; i < others; i++) {
+            distances[i] = distance(store.xs(), store.ys(), store.offset(vantage), store.xs(), store.ys(),
+                    store.offset(slots[i + 1]), n, Double.POSITIVE_INFINITY);
+        }
+        double[] sorted = Arrays.copyOf(distances, others);
+        Arrays.sort(sorted);
+        double radius = sorted[others/2];
+        int insideCount = 0;
+        for (int i = 0; i < others; i++) {
+            if (distances[i] < radius) {
+                insideCount++;
+            }
+        }
+        int[] inside = new int[insideCount];
+        int[] outside = new int[others - insideCount];
+        for (int i = 0, in = 0, out = 0; i < others; i++) {
+            if (distances[i] < radius) {
+                inside[in++] = slots[i + 1];
+            }
+            else {
+                outside[out++] = slots[i + 1];
+            }
+        }
+        return new Node(vantage, radius, build(store, inside, distances), build(store, outside, distances));
+    }
+
+    /**
+     * Copies the path to the leaf the template belongs in, adding the template to that leaf and splitting the leaf
+     * once it is full
+     */
+    private static Node insert(Node node, TemplateStore store, int slot) {
+        if (node.leaf != null) {
+            int[] leaf = Arrays.copyOf(node.leaf, node.leaf.length + 1);
+            leaf[node.leaf.length] = slot;
+            return build(store, leaf, new double[leaf.length]);
+        }
+        double distance = distance(store.xs(), store.ys(), store.offset(node.vantage), store.xs(), store.ys(),
+                store.offset(slot), store.pointsPerTemplate(), Double.POSITIVE_INFINITY);
+        if (distance < node.radius) {
+            return new Node(node.vantage, node.radius, insert(node.inside, store, slot), node.outside);
+        }
+        return new Node(node.vantage, node.radius, node.inside, insert(node.outside, store, slot));
+    }
+
+    /**
+     * Calculates the average distance between corresponding points of two processed gestures, stopping once it is
+     * known to be at least the bound
+     * @return the distance, or a value of at least bound if it stopped early
+     */
+    private static double distance(double[] ax, double[] ay, int aOffset, double[] bx, double[] by, int bOffset, int n, double bound) {
+        double limit = bound*n;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = bx[bOffset + i] - ax[aOffset + i];
+            double dy = by[bOffset + i] - ay[aOffset + i];
+            sum += Math.sqrt(dx*dx + dy*dy);
+            if (sum >= limit) {
+                return sum/n;
+            }
+        }
+        return sum/n;
+    }
+}
@@ -0,0 +1,305 @@
+package comp128.gestureRecognizer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import Graphics.Point;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIOManager {
+    private static final String[] GESTURE_FILES = {"arrowTemplate.xml", "arrowTest.xml", "circleTemplate.xml"};
+
+    private IOManager ioManager;
+
+    @BeforeEach
+    public void setup(){
+        ioManager = new IOManager();
+    }
+
+    /**
+     * Tests that the streaming loader reads the same points as parsing the whole document
+     */
+    @Test
+    public void testLoadGestureMatchesDocumentParsing() throws Exception {
+        for (String fileName : GESTURE_FILES) {
+            List<Point> expected = parseDocument(fileName);
+            List<Point> actual = new ArrayList<>(ioManager.loadGesture(fileName));
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getX(), actual.get(i).getX());
+                assertEquals(expected.get(i).getY(), actual.get(i).getY());
+            }
+        }
+    }
+
+    /**
+     * Tests loading from a stream that isn't a file, which leaves the stream open
+     */
+    @Test
+    public void testLoadGestureFromStream(){
+        String xml = "<?xml version=\"1.0\"?>\n<Gesture Name=\"line\" NumPts=\"3\">\n"
+                + "  <!-- a comment -->\n"
+                + "  <Point X=\"1.5\" Y=\"-2.0\"/>\n"
+                + "  <Point Y=\"4\" X=\"3\"></Point>\n"
+                + "  <Point X=\"1E3\" Y=\"0.25\" T=\"17\"/>\n"
+                + "</Gesture>";
+        TrackingStream in = new TrackingStream(xml.getBytes(StandardCharsets.UTF_8));
+        Deque<Point> gesture = ioManager.loadGesture(in);
+        assertFalse(in.closed);
+        assertEquals(3, gesture.size());
+        Iterator<Point> points = gesture.iterator();
+        assertPoint(1.5, -2.0, points.next());
+        assertPoint(3, 4, points.next());
+        assertPoint(1000, 0.25, points.next());
+    }
+
+    /**
+     * Tests that bad input is reported by returning null
+     */
+    @Test
+    public void testLoadGestureErrors(){
+        assertNull(ioManager.loadGesture("noSuchGesture.xml"));
+        assertNull(ioManager.loadGesture(stream("<Gesture><Point X=\"1\"/></Gesture>")));
+        assertNull(ioManager.loadGesture(stream("<Gesture><Point X=\"1\" Y=\"2\"></Gesture>")));
+    }
+
+    /**
+     * Tests that gestures saved in the binary format load back to exactly the same points, whether the coordinates
+     * are whole numbers, floats or doubles, and that whole-number gestures are much smaller than xml
+     */
+    @Test
+    public void testBinaryGestureRoundTrip() throws Exception {
+        for (String fileName : GESTURE_FILES) {
+            Deque<Point> gesture = ioManager.loadGesture(fileName);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ioManager.saveBinaryGesture(gesture, fileName, out);
+            assertEquals(BinaryGestureFormat.VARINT_DELTAS, out.toByteArray()[5]);
+            assertPoints(gesture, ioManager.loadBinaryGesture(new ByteArrayInputStream(out.toByteArray())));
+
+            long xmlSize;
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+                xmlSize = in.readAllBytes().length;
+            }
+            assertTrue(out.size()*8 < xmlSize, fileName + " is " + out.size() + " bytes, xml is " + xmlSize);
+        }
+
+        Deque<Point> halves = new ArrayDeque<>(List.of(new Point(0.5, -3), new Point(-0.0, 7.25), new Point(1e9, 4)));
+        Deque<Point> doubles = new ArrayDeque<>(List.of(new Point(0.1, 2), new Point(Math.PI, -1e300)));
+        Deque<Point> wholeNumbers = new ArrayDeque<>(List.of(new Point(-2147483647, 2147483647), new Point(2147483647, -2147483647), new Point(0, 0)));
+        byte[] expectedEncodings = {BinaryGestureFormat.FLOATS, BinaryGestureFormat.DOUBLES, BinaryGestureFormat.VARINT_DELTAS};
+        int i = 0;
+        for (Deque<Point> gesture : List.of(halves, doubles, wholeNumbers)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ioManager.saveBinaryGesture(gesture, "gesture " + i, out);
+            assertEquals(expectedEncodings[i], out.toByteArray()[5]);
+            PointBuffer points = new PointBuffer();
+            ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+            assertEquals("gesture " + i, BinaryGestureFormat.decode(in, points));
+            assertFalse(in.hasRemaining());
+            assertPoints(gesture, ioManager.loadBinaryGesture(new ByteArrayInputStream(out.toByteArray())));
+            i++;
+        }
+    }
+
+    /**
+     * Tests that truncated or foreign bytes are reported by returning null
+     */
+    @Test
+    public void testLoadBinaryGestureErrors(){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ioManager.saveBinaryGesture(ioManager.loadGesture("arrowTemplate.xml"), "arrow", out);
+        byte[] bytes = out.toByteArray();
+        for (int length = 0; length < bytes.length; length += 7) {
+            assertNull(ioManager.loadBinaryGesture(new ByteArrayInputStream(Arrays.copyOf(bytes, length))));
+        }
+        assertNull(ioManager.loadBinaryGesture(stream("<Gesture/>")));
+        assertNull(ioManager.loadBinaryGesture("noSuchGesture.gesture"));
+    }
+
+    /**
+     * Tests converting a directory of xml gestures to the binary format
+     */
+    @Test
+    public void testConvertToBinary() throws Exception {
+        Path xmlDirectory = Files.createTempDirectory("xmlGestures");
+        Path binaryDirectory = xmlDirectory.resolve("binary");
+        try {
+            for (String fileName : GESTURE_FILES) {
+                try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+                    Files.copy(in, xmlDirectory.resolve(fileName));
+                }
+            }
+            Files.write(xmlDirectory.resolve("broken.xml"), "<Gesture><Point X=\"1\"/>".getBytes(StandardCharsets.UTF_8));
+            assertEquals(GESTURE_FILES.length, ioManager.convertToBinary(xmlDirectory, binaryDirectory));
+
+            for (String fileName : GESTURE_FILES) {
+                Path binaryFile = binaryDirectory.resolve(fileName.replace(".xml", IOManager.BINARY_EXTENSION));
+                PointBuffer points = new PointBuffer();
+                String name = BinaryGestureFormat.decode(ByteBuffer.wrap(Files.readAllBytes(binaryFile)), points);
+                assertEquals(fileName.replace(".xml", ""), name);
+                try (InputStream in = Files.newInputStream(binaryFile)) {
+                    assertPoints(ioManager.loadGesture(fileName), ioManager.loadBinaryGesture(in));
+                }
+            }
+        }
+        finally {
+            deleteDirectory(xmlDirectory);
+        }
+    }
+
+    /**
+     * Tests that gestures saved to an archive can be read back by index and by name
+     */
+    @Test
+    public void testArchive() throws Exception {
+        Path directory = Files.createTempDirectory("gestureArchive");
+        try {
+            List<String> names = new ArrayList<>();
+            List<Deque<Point>> gestures = new ArrayList<>();
+            for (String fileName : GESTURE_FILES) {
+                names.add(fileName);
+                gestures.add(ioManager.loadGesture(fileName));
+            }
+            names.add("fractional");
+            gestures.add(new ArrayDeque<>(List.of(new Point(0.1, 0.2), new Point(0.3, 0.4))));
+            names.add("arrowTemplate.xml");
+            gestures.add(new ArrayDeque<>(List.of(new Point(1, 1))));
+            names.add("empty");
+            gestures.add(new ArrayDeque<>());
+            Path file = directory.resolve("gestures.archive");
+            ioManager.saveArchive(file, names, gestures);
+
+            GestureArchive archive = ioManager.openArchive(file);
+            assertEquals(gestures.size(), archive.size());
+            for (int i = 0; i < gestures.size(); i++) {
+                assertEquals(names.get(i), archive.getName(i));
+                assertPoints(gestures.get(i), archive.getGesture(i));
+            }
+            assertEquals(0, archive.indexOf("arrowTemplate.xml"));
+            assertPoints(gestures.get(2), archive.getGesture("circleTemplate.xml"));
+            assertEquals(-1, archive.indexOf("missing"));
+            assertNull(archive.getGesture("missing"));
+            assertThrows(IndexOutOfBoundsException.class, () -> archive.getGesture(gestures.size()));
+
+            Files.write(directory.resolve("empty.archive"), new byte[0]);
+            assertNull(ioManager.openArchive(directory.resolve("empty.archive")));
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 1] ^= 0x40;
+            Files.write(directory.resolve("corrupt.archive"), bytes);
+            assertNull(ioManager.openArchive(directory.resolve("corrupt.archive")));
+            assertNull(ioManager.openArchive(directory.resolve("missing.archive")));
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Tests packing a directory of xml gestures into an archive
+     */
+    @Test
+    public void testConvertToArchive() throws Exception {
+        Path directory = Files.createTempDirectory("xmlGestures");
+        try {
+            for (String fileName : GESTURE_FILES) {
+                try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+                    Files.copy(in, directory.resolve(fileName));
+                }
+            }
+            // a directory can be listed like an xml file but not read
+            Files.createDirectory(directory.resolve("unreadable.xml"));
+            Path file = directory.resolve("gestures.archive");
+            assertEquals(GESTURE_FILES.length, ioManager.convertToArchive(directory, file));
+            GestureArchive archive = ioManager.openArchive(file);
+            assertEquals(GESTURE_FILES.length, archive.size());
+            for (String fileName : GESTURE_FILES) {
+                assertPoints(ioManager.loadGesture(fileName), archive.getGesture(fileName.replace(".xml", "")));
+            }
+
+            byte[] bytes = Files.readAllBytes(file);
+            try (GestureArchive.Writer writer = new GestureArchive.Writer(file)) {
+                PointBuffer points = new PointBuffer();
+                points.addAll(ioManager.loadGesture(GESTURE_FILES[0]));
+                writer.add("unfinished", points);
+            }
+            assertArrayEquals(bytes, Files.readAllBytes(file));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(0, files.filter(path -> path.toString().endsWith(".tmp")).count());
+            }
+        }
+        finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    static void assertPoints(Deque<Point> expected, Deque<Point> actual){
+        assertEquals(expected.size(), actual.size());
+        Iterator<Point> actualPoints = actual.iterator();
+        for (Point point : expected) {
+            Point actualPoint = actualPoints.next();
+            assertEquals(Double.doubleToLongBits(point.getX()), Double.doubleToLongBits(actualPoint.getX()));
+            assertEquals(Double.doubleToLongBits(point.getY()), Double.doubleToLongBits(actualPoint.getY()));
+        }
+    }
+
+    private static void assertPoint(double x, double y, Point point){
+        assertEquals(x, point.getX());
+        assertEquals(y, point.getY());
+    }
+
+    private static InputStream stream(String xml){
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a gesture file the way IOManager used to, by building the whole document
+     */
+    private List<Point> parseDocument(String fileName) throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(fileName)) {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+            NodeList tags = document.getElementsByTagName("Point");
+            List<Point> points = new ArrayList<>();
+            for (int i = 0; i < tags.getLength(); i++) {
+                NamedNodeMap attributes = tags.item(i).getAttributes();
+                points.add(new Point(Double.parseDouble(attributes.getNamedItem("X").getNodeValue()),
+                        Double.parseDouble(attributes.getNamedItem("Y").getNodeValue())));
+            }
+            return points;
+        }
+    }
+
+    private static class TrackingStream extends ByteArrayInputStream {
+        boolean closed;
+
+        TrackingStream(byte[] bytes){
+            super(bytes);
+        }
+
+        @Override
+        public void close(){
+            closed = true;
+        }
+    }
+}
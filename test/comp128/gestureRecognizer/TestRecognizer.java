@@ -3,7 +3,19 @@ package comp128.gestureRecognizer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleUnaryOperator;
 
 import Graphics.Point;
 
@@ -231,6 +243,1489 @@ public class TestRecognizer {
         score = testMatch.getScore();
         assertEquals(1.0, score, 0.01); // A template matched with itself should be a perfect match
    }
-}
 
+   /**
+    * Tests that a template's points can still be read back as a deque from the packed template store
+    */
+   @Test
+   public void testTemplatePoints(){
+        IOManager ioManager = new IOManager();
+        recognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        recognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+
+        Template circle = recognizer.recognize(ioManager.loadGesture("circleTemplate.xml")).getTemplate();
+        assertEquals("circle", circle.getName());
+        Deque<Point> points = circle.getPoints();
+        assertEquals(64, points.size());
+        assertEquals(0, recognizer.centroid(points).getX(), 0.000001); // Processed templates are centred on the origin
+        assertEquals(0, recognizer.centroid(points).getY(), 0.000001);
+
+        Deque<Point> gesture = ioManager.loadGesture("arrowTest.xml");
+        Template standalone = new Template(gesture, "arrow");
+        assertEquals("arrow", standalone.getName());
+        assertSame(gesture, standalone.getPoints());
+   }
+
+   /**
+    * Tests that recognizing a gesture given as arrays into a reused BestMatch allocates nothing once warmed up
+    */
+   @Test
+   public void testRecognizeDoesNotAllocate(){
+        IOManager ioManager = new IOManager();
+        recognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        recognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+
+        Deque<Point> testGesture = ioManager.loadGesture("arrowTest.xml");
+        double[] xs = new double[testGesture.size()];
+        double[] ys = new double[testGesture.size()];
+        int n = 0;
+        for (Point p : testGesture) {
+            xs[n] = p.getX();
+            ys[n] = p.getY();
+            n++;
+        }
+
+        BestMatch match = new BestMatch();
+        for (int i = 0; i < 20000; i++) { // Warm up so the JIT has compiled the recognizer
+            recognizer.recognize(xs, ys, n, match);
+        }
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            recognizer.recognize(xs, ys, n, match);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(0, allocated, "bytes allocated by 1000 calls to recognize");
+        assertEquals("arrow", match.getTemplate().getName());
+        assertEquals(0.888684, match.getScore(), 0.001);
+   }
+
+   /**
+    * Tests that the Protractor matcher picks the same templates as the golden section search on the res/ gestures
+    */
+   @Test
+   public void testProtractorMatcher(){
+        IOManager ioManager = new IOManager();
+        recognizer.setMatcher(new ProtractorMatcher());
+        recognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        recognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+
+        BestMatch match = recognizer.recognize(ioManager.loadGesture("arrowTest.xml"));
+        assertEquals("arrow", match.getTemplate().getName());
+        assertTrue(match.getScore() > 0.8);
+
+        match = recognizer.recognize(ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals("circle", match.getTemplate().getName());
+        assertEquals(1.0, match.getScore(), 0.01); // A template matched with itself should be a perfect match
+   }
+
+   /**
+    * Tests that abandoning templates early against the best distance so far picks the same template with the same
+    * score as comparing every template in full
+    */
+   @Test
+   public void testEarlyAbandonMatchesExhaustiveSearch(){
+        Recognizer exhaustiveRecognizer = new Recognizer();
+        exhaustiveRecognizer.setMatcher(exhaustive(new GoldenSectionMatcher()));
+
+        Random random = new Random(128);
+        for (int i = 0; i < 200; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            recognizer.addTemplate("template " + i, gesture);
+            exhaustiveRecognizer.addTemplate("template " + i, gesture);
+        }
+        assertSameMatches(exhaustiveRecognizer, recognizer, random, 50, 0);
+   }
+
+   /**
+    * Tests that scanning the templates in parallel picks the same template with the same score as the sequential scan
+    */
+   @Test
+   public void testParallelScanMatchesSequentialScan(){
+        Recognizer parallelRecognizer = new Recognizer();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallelRecognizer.setParallelScan(pool, 100);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            recognizer.addTemplate("template " + i, gesture);
+            parallelRecognizer.addTemplate("template " + i, gesture);
+        }
+        for (int i = 0; i < 20; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            BestMatch expected = recognizer.recognize(gesture);
+            BestMatch actual = parallelRecognizer.recognize(gesture);
+            assertEquals(expected.getTemplate().getName(), actual.getTemplate().getName());
+            assertEquals(expected.getScore(), actual.getScore());
+        }
+
+        RecognizerMetrics metrics = new RecognizerMetrics();
+        parallelRecognizer.setMetrics(metrics);
+        for (int i = 0; i < 20; i++) {
+            parallelRecognizer.recognize(randomGesture(random));
+        }
+        RecognizerMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(20*1000, snapshot.getTemplatesScanned());
+        assertTrue(snapshot.getGoldenSectionIterations() > 0);
+        assertTrue(snapshot.getEarlyAbandons() > 0 && snapshot.getEarlyAbandons() <= 20*1000);
+        pool.shutdown();
+   }
+
+   /**
+    * Tests that the top k matches are the k closest templates in order, the same as comparing every template in full
+    */
+   @Test
+   public void testRecognizeTopK(){
+        Recognizer exhaustiveRecognizer = new Recognizer();
+        exhaustiveRecognizer.setMatcher(exhaustive(new GoldenSectionMatcher()));
+        Random random = new Random(6);
+        for (int i = 0; i < 300; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            recognizer.addTemplate("template " + i, gesture);
+            exhaustiveRecognizer.addTemplate("template " + i, gesture);
+        }
+        for (int i = 0; i < 20; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            List<BestMatch> expected = exhaustiveRecognizer.recognizeTopK(gesture, 5);
+            List<BestMatch> actual = recognizer.recognizeTopK(gesture, 5);
+            assertEquals(5, actual.size());
+            for (int j = 0; j < 5; j++) {
+                assertEquals(expected.get(j).getTemplate().getName(), actual.get(j).getTemplate().getName());
+                assertEquals(expected.get(j).getScore(), actual.get(j).getScore());
+            }
+            assertEquals(recognizer.recognize(gesture).getTemplate().getName(), actual.get(0).getTemplate().getName());
+        }
+        assertEquals(300, recognizer.recognizeTopK(randomGesture(random), 1000).size());
+   }
+
+   /**
+    * Tests that recognizing a batch of gestures gives the same results as recognizing them one at a time
+    */
+   @Test
+   public void testRecognizeAll(){
+        Random random = new Random(7);
+        for (int i = 0; i < 150; i++) {
+            recognizer.addTemplate("template " + i, randomGesture(random));
+        }
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            gestures.add(randomGesture(random));
+        }
+        List<BestMatch> matches = recognizer.recognizeAll(gestures);
+        assertEquals(gestures.size(), matches.size());
+        for (int i = 0; i < gestures.size(); i++) {
+            BestMatch expected = recognizer.recognize(gestures.get(i));
+            assertSame(expected.getTemplate(), matches.get(i).getTemplate());
+            assertEquals(expected.getScore(), matches.get(i).getScore());
+        }
+   }
+
+   /**
+    * Tests that recognizeAll narrows down the templates the same way recognize does while the cascade or the
+    * vantage-point tree is on, so it still gives the same matches
+    */
+   @Test
+   public void testRecognizeAllWithCandidateSelection(){
+        Random random = new Random(31);
+        for (int i = 0; i < 300; i++) {
+            recognizer.addTemplate("template " + i, randomGesture(random));
+        }
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            gestures.add(randomGesture(random));
+        }
+        for (int mode = 0; mode < 2; mode++) {
+            if (mode == 0) {
+                recognizer.setCascade(0.05);
+            }
+            else {
+                recognizer.setCascade(0);
+                recognizer.setVantagePointIndex(8);
+            }
+            List<BestMatch> matches = recognizer.recognizeAll(gestures);
+            assertEquals(gestures.size(), matches.size());
+            for (int i = 0; i < gestures.size(); i++) {
+                BestMatch expected = recognizer.recognize(gestures.get(i));
+                assertSame(expected.getTemplate(), matches.get(i).getTemplate());
+                assertEquals(expected.getScore(), matches.get(i).getScore());
+            }
+        }
+   }
+
+   /**
+    * Tests that the fused normalizer gives the same points as running resample, rotateBy, scaleTo and translateTo
+    */
+   @Test
+   public void testNormalizerMatchesReferenceSteps(){
+        IOManager ioManager = new IOManager();
+        List<Deque<Point>> gestures = new ArrayList<>();
+        gestures.add(ioManager.loadGesture("arrowTemplate.xml"));
+        gestures.add(ioManager.loadGesture("arrowTest.xml"));
+        gestures.add(ioManager.loadGesture("circleTemplate.xml"));
+        Random random = new Random(8);
+        for (int i = 0; i < 20; i++) {
+            gestures.add(randomGesture(random));
+        }
+
+        Normalizer normalizer = new Normalizer(64, 200, new Point(0, 0));
+        ProcessedGesture processed = new ProcessedGesture(64);
+        int compared = 0;
+        for (Deque<Point> gesture : gestures) {
+            Deque<Point> resampled = recognizer.resample(gesture, 64);
+            if (resampled.size() != 64) {
+                continue; // The reference resample drops points when the last segment spans a whole interval
+            }
+            Deque<Point> rotated = recognizer.rotateBy(resampled, -recognizer.indicativeAngle(resampled));
+            Deque<Point> expected = recognizer.translateTo(recognizer.scaleTo(rotated, 200), new Point(0, 0));
+
+            PointBuffer original = new PointBuffer();
+            original.addAll(gesture);
+            normalizer.normalize(original.xs(), original.ys(), original.size(), processed);
+            int i = 0;
+            for (Point point : expected) {
+                assertEquals(point.getX(), processed.xs[i], 1e-9);
+                assertEquals(point.getY(), processed.ys[i], 1e-9);
+                i++;
+            }
+            compared++;
+        }
+        assertTrue(compared > 10);
+   }
+
+   /**
+    * Tests that the golden section matcher, which looks its probe angles up in a precomputed tree, finds the same
+    * distance as the golden section search from the $1 paper run with rotateBy and pathDistance
+    */
+   @Test
+   public void testGoldenSectionMatchesReferenceSearch(){
+        Random random = new Random(20);
+        Normalizer normalizer = new Normalizer(64, 200, new Point(0, 0));
+        ProcessedGesture processed = new ProcessedGesture(64);
+        TemplateStore store = withRandomTemplates(new TemplateStore(64), 0, 20, random, normalizer, processed);
+        GoldenSectionMatcher matcher = new GoldenSectionMatcher();
+        double phi = 0.5*(-1.0 + Math.sqrt(5.0));
+        for (int g = 0; g < 10; g++) {
+            normalizeRandomGesture(random, normalizer, processed);
+            Deque<Point> points = new ArrayDeque<>();
+            for (int i = 0; i < 64; i++) {
+                points.add(new Point(processed.xs[i], processed.ys[i]));
+            }
+            for (int slot = 0; slot < store.size(); slot++) {
+                Deque<Point> template = store.points(slot);
+                double thetaA = -Math.toRadians(45);
+                double thetaB = Math.toRadians(45);
+                double x1 = phi*thetaA + (1 - phi)*thetaB;
+                double f1 = recognizer.pathDistance(recognizer.rotateBy(points, x1), template);
+                double x2 = (1 - phi)*thetaA + phi*thetaB;
+                double f2 = recognizer.pathDistance(recognizer.rotateBy(points, x2), template);
+                while (Math.abs(thetaB - thetaA) > Math.toRadians(2)) {
+                    if (f1 < f2) {
+                        thetaB = x2;
+                        x2 = x1;
+                        f2 = f1;
+                        x1 = phi*thetaA + (1 - phi)*thetaB;
+                        f1 = recognizer.pathDistance(recognizer.rotateBy(points, x1), template);
+                    }
+                    else {
+                        thetaA = x1;
+                        x1 = x2;
+                        f1 = f2;
+                        x2 = (1 - phi)*thetaA + phi*thetaB;
+                        f2 = recognizer.pathDistance(recognizer.rotateBy(points, x2), template);
+                    }
+                }
+                assertEquals(Math.min(f1, f2), matcher.distance(processed, store, slot, Double.POSITIVE_INFINITY), 1e-9);
+            }
+        }
+   }
+
+   /**
+    * Tests that a session fed one point at a time publishes provisional matches and finishes with the same match as
+    * recognizing the whole gesture
+    */
+   @Test
+   public void testRecognitionSession(){
+        Random random = new Random(9);
+        for (int i = 0; i < 100; i++) {
+            recognizer.addTemplate("template " + i, randomGesture(random));
+        }
+        IOManager ioManager = new IOManager();
+        recognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+
+        List<BestMatch> provisionalMatches = new ArrayList<>();
+        RecognitionSession session = recognizer.startSession(match -> provisionalMatches.add(match), 0);
+        Deque<Point> testGesture = ioManager.loadGesture("arrowTest.xml");
+        for (Point point : testGesture) {
+            session.addPoint(point);
+        }
+        assertFalse(provisionalMatches.isEmpty());
+        assertSame(provisionalMatches.get(provisionalMatches.size() - 1), session.getProvisionalMatch());
+
+        BestMatch expected = recognizer.recognize(testGesture);
+        BestMatch actual = session.finish();
+        assertEquals("arrow", actual.getTemplate().getName());
+        assertSame(expected.getTemplate(), actual.getTemplate());
+        assertEquals(expected.getScore(), actual.getScore());
+   }
+
+   /**
+    * Tests that a session with an executor only hands it one provisional recognition at a time, and drops a
+    * provisional match that finishes after the gesture
+    */
+   @Test
+   public void testRecognitionSessionOnExecutor(){
+        IOManager ioManager = new IOManager();
+        recognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        recognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        List<Runnable> queued = new ArrayList<>();
+        List<BestMatch> provisionalMatches = new ArrayList<>();
+        RecognitionSession session = recognizer.startSession(match -> provisionalMatches.add(match), 0, queued::add);
+        Iterator<Point> testGesture = ioManager.loadGesture("arrowTest.xml").iterator();
+        for (int i = 0; i < 10; i++) {
+            session.addPoint(testGesture.next());
+        }
+        assertEquals(1, queued.size());
+        assertTrue(provisionalMatches.isEmpty());
+        queued.remove(0).run();
+        assertEquals(1, provisionalMatches.size());
+        assertSame(provisionalMatches.get(0), session.getProvisionalMatch());
+
+        while (testGesture.hasNext()) {
+            session.addPoint(testGesture.next());
+        }
+        assertEquals(1, queued.size());
+        assertEquals("arrow", session.finish().getTemplate().getName());
+        queued.remove(0).run();
+        assertEquals(1, provisionalMatches.size());
+   }
+
+   /**
+    * Tests that metrics record every stage of each recognized gesture and that the latency histogram reports
+    * percentiles to within its bucket precision
+    */
+   @Test
+   public void testMetrics(){
+        Random random = new Random(10);
+        for (int i = 0; i < 50; i++) {
+            recognizer.addTemplate("template " + i, randomGesture(random));
+        }
+        RecognizerMetrics metrics = new RecognizerMetrics(true);
+        recognizer.setMetrics(metrics);
+        for (int i = 0; i < 20; i++) {
+            recognizer.recognize(randomGesture(random));
+        }
+        recognizer.recognizeTopK(randomGesture(random), 3);
+        RecognizerMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(21, snapshot.getResample().getCount());
+        assertEquals(21, snapshot.getNormalize().getCount());
+        assertEquals(21, snapshot.getScan().getCount());
+        assertEquals(21*50, snapshot.getTemplatesScanned());
+        assertTrue(snapshot.getGoldenSectionIterations() > 0);
+        assertTrue(snapshot.getEarlyAbandons() > 0);
+        assertTrue(snapshot.getScan().getMean() > 0);
+
+        recognizer.setMetrics(null);
+        recognizer.recognize(randomGesture(random));
+        assertEquals(21, metrics.snapshot().getScan().getCount());
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i*1000L);
+        }
+        LatencyHistogram.Snapshot latencies = histogram.snapshot();
+        assertEquals(1000, latencies.getCount());
+        assertEquals(500500.0, latencies.getMean(), 1e-9);
+        assertEquals(1000000, latencies.getMax());
+        assertEquals(500000, latencies.getValueAtPercentile(50), 500000*0.125);
+        assertEquals(990000, latencies.getValueAtPercentile(99), 990000*0.125);
+        assertEquals(1000000, latencies.getValueAtPercentile(100));
+        for (long value = 0; value < 100000; value += 7) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowestValueIn(bucket) <= value);
+            assertTrue(LatencyHistogram.lowestValueIn(bucket + 1) > value);
+        }
+   }
+
+   /**
+    * Tests that templates added from an archive recognize gestures the same as templates added one at a time
+    */
+   @Test
+   public void testAddTemplatesFromArchive() throws Exception {
+        Random random = new Random(11);
+        List<String> names = new ArrayList<>();
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            names.add("template " + i);
+            gestures.add(randomGesture(random));
+            recognizer.addTemplate(names.get(i), gestures.get(i));
+        }
+        Path directory = Files.createTempDirectory("templates");
+        try {
+            Path file = directory.resolve("templates.archive");
+            IOManager ioManager = new IOManager();
+            ioManager.saveArchive(file, names, gestures);
+            Recognizer archived = new Recognizer();
+            assertEquals(200, archived.addTemplates(ioManager.openArchive(file)));
+            Recognizer parallel = new Recognizer();
+            assertEquals(200, parallel.addTemplates(ioManager.openArchive(file), 3));
+
+            for (int i = 0; i < 50; i++) {
+                Deque<Point> gesture = randomGesture(random);
+                BestMatch expected = recognizer.recognize(gesture);
+                for (Recognizer loaded : List.of(archived, parallel)) {
+                    BestMatch actual = loaded.recognize(gesture);
+                    assertEquals(expected.getTemplate().getName(), actual.getTemplate().getName());
+                    assertEquals(expected.getScore(), actual.getScore());
+                }
+            }
+        }
+        finally {
+            TestIOManager.deleteDirectory(directory);
+        }
+   }
+
+   /**
+    * Tests that templates restored from a snapshot are exactly the processed templates that were saved, and that
+    * snapshots processed with different settings are rejected
+    */
+   @Test
+   public void testTemplateSnapshot() throws Exception {
+        Random random = new Random(12);
+        for (int i = 0; i < 300; i++) {
+            recognizer.addTemplate("template " + i, randomGesture(random));
+        }
+        Path directory = Files.createTempDirectory("snapshot");
+        try {
+            Path file = directory.resolve("templates.snapshot");
+            recognizer.saveTemplateSnapshot(file);
+            Recognizer restored = new Recognizer();
+            restored.addTemplate("replaced", randomGesture(random));
+            restored.loadTemplateSnapshot(file);
+            for (int i = 0; i < 50; i++) {
+                Deque<Point> gesture = randomGesture(random);
+                BestMatch expected = recognizer.recognize(gesture);
+                BestMatch actual = restored.recognize(gesture);
+                assertEquals(expected.getTemplate().getName(), actual.getTemplate().getName());
+                assertEquals(expected.getScore(), actual.getScore());
+            }
+            List<BestMatch> expectedTop = recognizer.recognizeTopK(randomGesture(new Random(1)), 300);
+            List<BestMatch> actualTop = restored.recognizeTopK(randomGesture(new Random(1)), 300);
+            for (int i = 0; i < 300; i++) {
+                assertEquals(expectedTop.get(i).getTemplate().getName(), actualTop.get(i).getTemplate().getName());
+                assertEquals(expectedTop.get(i).getScore(), actualTop.get(i).getScore());
+                assertIterableEquals(expectedTop.get(i).getTemplate().getPoints(), actualTop.get(i).getTemplate().getPoints());
+            }
+
+            Path otherSize = directory.resolve("otherSize.snapshot");
+            TemplateStore store = new TemplateStore(32).withTemplate("short", new double[32], new double[32]);
+            TemplateSnapshot.write(otherSize, store, 200, 0, 0);
+            assertThrows(IOException.class, () -> restored.loadTemplateSnapshot(otherSize));
+            Path otherScale = directory.resolve("otherScale.snapshot");
+            TemplateSnapshot.write(otherScale, new TemplateStore(64), 100, 0, 0);
+            assertThrows(IOException.class, () -> restored.loadTemplateSnapshot(otherScale));
+            Path truncated = directory.resolve("truncated.snapshot");
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 1));
+            assertThrows(IOException.class, () -> restored.loadTemplateSnapshot(truncated));
+            assertEquals(expectedTop.get(0).getTemplate().getName(), restored.recognizeTopK(randomGesture(new Random(1)), 1).get(0).getTemplate().getName());
+        }
+        finally {
+            TestIOManager.deleteDirectory(directory);
+        }
+   }
+
+   /**
+    * Tests that adding a directory of templates in parallel gives the same templates as adding them one at a time,
+    * and that a bad file means no templates are added
+    */
+   @Test
+   public void testAddTemplatesFromDirectory() throws Exception {
+        Random random = new Random(13);
+        IOManager ioManager = new IOManager();
+        Path directory = Files.createTempDirectory("templates");
+        try {
+            for (int i = 0; i < 300; i++) {
+                Deque<Point> gesture = new ArrayDeque<>();
+                for (Point point : randomGesture(random)) {
+                    gesture.add(new Point(Math.round(point.getX()), Math.round(point.getY())));
+                }
+                try (OutputStream out = Files.newOutputStream(directory.resolve(String.format("g%04d", i) + IOManager.BINARY_EXTENSION))) {
+                    ioManager.saveBinaryGesture(gesture, "ignored", out);
+                }
+            }
+            try (InputStream in = getClass().getClassLoader().getResourceAsStream("arrowTemplate.xml")) {
+                Files.copy(in, directory.resolve("g0150a.xml"));
+            }
+            Files.write(directory.resolve("notes.txt"), new byte[] {1, 2, 3});
+
+            Deque<Point> existing = randomGesture(random);
+            Recognizer sequential = new Recognizer();
+            sequential.addTemplate("existing", existing);
+            for (Path file : IOManager.gestureFiles(directory)) {
+                String fileName = file.getFileName().toString();
+                Deque<Point> gesture = fileName.endsWith(".xml")
+                        ? ioManager.loadGesture(Files.newInputStream(file))
+                        : ioManager.loadBinaryGesture(Files.newInputStream(file));
+                sequential.addTemplate(fileName.substring(0, fileName.lastIndexOf('.')), gesture);
+            }
+            recognizer.addTemplate("existing", existing);
+            assertEquals(301, recognizer.addTemplates(directory, 4));
+
+            List<BestMatch> expected = sequential.recognizeTopK(randomGesture(new Random(2)), 302);
+            List<BestMatch> actual = recognizer.recognizeTopK(randomGesture(new Random(2)), 302);
+            assertEquals(302, actual.size());
+            Set<String> expectedNames = new HashSet<>();
+            Set<String> actualNames = new HashSet<>();
+            for (int i = 0; i < 302; i++) {
+                expectedNames.add(expected.get(i).getTemplate().getName());
+                actualNames.add(actual.get(i).getTemplate().getName());
+                assertEquals(expected.get(i).getScore(), actual.get(i).getScore());
+            }
+            assertEquals(expectedNames, actualNames);
+            assertTrue(actualNames.contains("g0150a"));
+
+            Files.write(directory.resolve("g0200" + IOManager.BINARY_EXTENSION), new byte[] {1, 2, 3});
+            Recognizer failed = new Recognizer();
+            failed.addTemplate("only", randomGesture(random));
+            assertThrows(IOException.class, () -> failed.addTemplates(directory, 4));
+            assertEquals(1, failed.recognizeTopK(randomGesture(random), 10).size());
+        }
+        finally {
+            TestIOManager.deleteDirectory(directory);
+        }
+   }
+
+   /**
+    * Tests that adding templates to a store leaves the store it was added to unchanged, whether the new template is
+    * written into spare capacity, into a copy because the store already grew another way, or into a bigger copy
+    */
+   @Test
+   public void testTemplateStoreSnapshots(){
+        TemplateStore empty = new TemplateStore(2);
+        TemplateStore one = empty.withTemplate("a", new double[] {1, 2}, new double[] {3, 4});
+        TemplateStore two = one.withTemplate("b", new double[] {5, 6}, new double[] {7, 8});
+        TemplateStore branch = one.withTemplate("c", new double[] {9, 10}, new double[] {11, 12});
+        assertEquals(0, empty.size());
+        assertEquals(1, one.size());
+        assertEquals("b", two.get(1).getName());
+        assertEquals("c", branch.get(1).getName());
+        assertSame(one.get(0), two.get(0));
+        assertEquals(one.get(0).getId(), branch.get(0).getId());
+        assertEquals(6, two.xs()[two.offset(1) + 1]);
+        assertEquals(10, branch.xs()[branch.offset(1) + 1]);
+        assertIterableEquals(List.of(new Point(5, 7), new Point(6, 8)), two.get(1).getPoints());
+
+        TemplateStore grown = two;
+        for (int i = 0; i < 100; i++) {
+            grown = grown.withTemplates(new String[] {"x" + i, "y" + i}, new double[] {i, i, i, i}, new double[] {-i, -i, -i, -i});
+        }
+        assertEquals(202, grown.size());
+        assertEquals("y99", grown.get(201).getName());
+        assertEquals(2, two.size());
+        assertEquals(6, two.xs()[two.offset(1) + 1]);
+        assertEquals(two.get(1).getId(), grown.get(1).getId());
+        assertEquals(Math.sqrt(99*99*4), grown.magnitude(201), 1e-9);
+   }
+
+   /**
+    * Tests that once a store has grown into new arrays, its templates no longer keep the old arrays alive
+    */
+   @Test
+   public void testGrownStoreReleasesOldArrays(){
+        TemplateStore store = new TemplateStore(2);
+        for (int i = 0; i < 10; i++) {
+            store = store.withTemplate("t" + i, new double[] {i, i}, new double[] {-i, -i});
+        }
+        WeakReference<double[]> oldXs = new WeakReference<>(store.xs());
+        long firstId = store.get(0).getId();
+        for (int i = 10; i < 100; i++) {
+            store = store.withTemplate("t" + i, new double[] {i, i}, new double[] {-i, -i});
+        }
+        assertNotSame(oldXs.get(), store.xs());
+        assertEquals(firstId, store.get(0).getId());
+        assertIterableEquals(List.of(new Point(0, 0), new Point(0, 0)), store.get(0).getPoints());
+        assertCollected(oldXs);
+   }
+
+   /**
+    * Asks for garbage collection until the referenced object has been collected, failing if it never is
+    */
+   static void assertCollected(WeakReference<?> reference){
+        for (int attempt = 0; attempt < 50 && reference.get() != null; attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertNull(reference.get(), "object is still reachable");
+   }
+
+   /**
+    * Tests recognizing on several threads while templates are being added one at a time and in batches
+    */
+   @Test
+   public void testRecognizeWhileAddingTemplates() throws Exception {
+        Random random = new Random(14);
+        List<String> names = new ArrayList<>();
+        List<Deque<Point>> templates = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            names.add("template " + i);
+            templates.add(randomGesture(random));
+        }
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            gestures.add(randomGesture(random));
+        }
+        recognizer.addTemplate(names.get(0), templates.get(0));
+
+        Set<String> nameSet = new HashSet<>(names);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean adding = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    int i = 0;
+                    while (adding.get()) {
+                        BestMatch match = recognizer.recognize(gestures.get(i++ % gestures.size()));
+                        assertTrue(nameSet.contains(match.getTemplate().getName()));
+                        assertTrue(match.getScore() <= 1);
+                        List<BestMatch> top = recognizer.recognizeTopK(gestures.get(i % gestures.size()), 3);
+                        assertTrue(top.get(0).getScore() >= top.get(top.size() - 1).getScore());
+                    }
+                }
+                catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 1; i < 300; i++) {
+            recognizer.addTemplate(names.get(i), templates.get(i));
+        }
+        for (int i = 300; i < 600; i += 50) {
+            recognizer.addTemplates(names.subList(i, i + 50), templates.subList(i, i + 50));
+        }
+        adding.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(failures.isEmpty(), () -> failures.toString());
+
+        Recognizer sequential = new Recognizer();
+        for (int i = 0; i < 600; i++) {
+            sequential.addTemplate(names.get(i), templates.get(i));
+        }
+        for (Deque<Point> gesture : gestures) {
+            BestMatch expected = sequential.recognize(gesture);
+            BestMatch actual = recognizer.recognize(gesture);
+            assertEquals(expected.getTemplate().getName(), actual.getTemplate().getName());
+            assertEquals(expected.getScore(), actual.getScore());
+        }
+   }
+
+   /**
+    * Tests that removing and replacing templates gives the same results as a recognizer that only ever had the
+    * remaining templates, before and after the store is compacted
+    */
+   @Test
+   public void testRemoveAndReplaceTemplates(){
+        Recognizer parallelRecognizer = new Recognizer();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallelRecognizer.setParallelScan(pool, 100);
+        Random random = new Random(18);
+        List<String> names = new ArrayList<>();
+        List<Deque<Point>> templates = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            names.add("template " + i % 100);
+            templates.add(randomGesture(random));
+        }
+        recognizer.addTemplates(names, templates);
+        parallelRecognizer.addTemplates(names, templates);
+        List<Deque<Point>> gestures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            gestures.add(randomGesture(random));
+        }
+
+        assertEquals(0, recognizer.removeTemplate("missing"));
+        for (int i = 0; i < 40; i++) {
+            assertEquals(3, recognizer.removeTemplate("template " + i));
+            parallelRecognizer.removeTemplate("template " + i);
+        }
+        assertEquals(180, recognizer.getTemplateCount());
+        Deque<Point> replacement = randomGesture(random);
+        assertTrue(recognizer.replaceTemplate("template 50", replacement));
+        parallelRecognizer.replaceTemplate("template 50", replacement);
+        assertFalse(recognizer.replaceTemplate("template 0", replacement));
+        parallelRecognizer.replaceTemplate("template 0", replacement);
+        assertEquals(179, recognizer.getTemplateCount());
+        assertRemainingTemplates(names, templates, List.of("template 50", "template 0"), replacement, gestures, recognizer, parallelRecognizer);
+
+        for (int i = 40; i < 80; i++) {
+            recognizer.removeTemplate("template " + i);
+            parallelRecognizer.removeTemplate("template " + i);
+        }
+        assertEquals(61, recognizer.getTemplateCount());
+        assertRemainingTemplates(names, templates, List.of("template 50", "template 0"), replacement, gestures, recognizer, parallelRecognizer);
+
+        for (int i = 0; i < 100; i++) {
+            recognizer.removeTemplate("template " + i);
+        }
+        assertEquals(0, recognizer.getTemplateCount());
+        assertNull(recognizer.recognize(gestures.get(0)));
+        assertTrue(recognizer.recognizeTopK(gestures.get(0), 3).isEmpty());
+        pool.shutdown();
+   }
+
+   /**
+    * Checks that recognizers give the same results as one built from the templates whose names are still present,
+    * plus the replacement for each replaced name that is still present
+    */
+   private static void assertRemainingTemplates(List<String> names, List<Deque<Point>> templates, List<String> replaced,
+                                                Deque<Point> replacement, List<Deque<Point>> gestures, Recognizer... recognizers){
+        Set<String> present = new HashSet<>();
+        for (BestMatch match : recognizers[0].recognizeTopK(gestures.get(0), Integer.MAX_VALUE)) {
+            present.add(match.getTemplate().getName());
+        }
+        Recognizer expected = new Recognizer();
+        for (int i = 0; i < names.size(); i++) {
+            if (present.contains(names.get(i)) && !replaced.contains(names.get(i))) {
+                expected.addTemplate(names.get(i), templates.get(i));
+            }
+        }
+        for (String name : replaced) {
+            if (present.contains(name)) {
+                expected.addTemplate(name, replacement);
+            }
+        }
+        assertEquals(expected.getTemplateCount(), recognizers[0].getTemplateCount());
+        for (Recognizer actual : recognizers) {
+            for (Deque<Point> gesture : gestures) {
+                BestMatch expectedMatch = expected.recognize(gesture);
+                BestMatch actualMatch = actual.recognize(gesture);
+                assertEquals(expectedMatch.getTemplate().getName(), actualMatch.getTemplate().getName());
+                assertEquals(expectedMatch.getScore(), actualMatch.getScore());
+                assertIterableEquals(expectedMatch.getTemplate().getPoints(), actualMatch.getTemplate().getPoints());
+                List<BestMatch> expectedTop = expected.recognizeTopK(gesture, 5);
+                List<BestMatch> actualTop = actual.recognizeTopK(gesture, 5);
+                for (int i = 0; i < 5; i++) {
+                    assertEquals(expectedTop.get(i).getScore(), actualTop.get(i).getScore());
+                }
+            }
+            List<BestMatch> expectedAll = expected.recognizeAll(gestures);
+            List<BestMatch> actualAll = actual.recognizeAll(gestures);
+            for (int i = 0; i < gestures.size(); i++) {
+                assertEquals(expectedAll.get(i).getTemplate().getName(), actualAll.get(i).getTemplate().getName());
+                assertEquals(expectedAll.get(i).getScore(), actualAll.get(i).getScore());
+            }
+        }
+   }
+
+   /**
+    * Tests that removed slots are skipped until half the store is removed, and that compacting gives the memory back,
+    * both in capacity and by letting the arrays from before the churn be collected
+    */
+   @Test
+   public void testTemplateStoreCompaction(){
+        TemplateStore store = new TemplateStore(2);
+        int baseline = store.capacity();
+        for (int i = 0; i < 4; i++) {
+            store = store.withTemplate("t" + i, new double[] {i, i}, new double[] {-i, -i});
+        }
+        Template kept = store.get(3);
+        TemplateStore removed = store.without("t1");
+        assertSame(store, store.without("missing"));
+        assertEquals(4, removed.size());
+        assertEquals(3, removed.liveCount());
+        assertTrue(removed.isRemoved(1));
+        assertFalse(store.isRemoved(1));
+        assertSame(kept, removed.get(3));
+        TemplateStore grown = removed.withTemplate("t4", new double[] {4, 4}, new double[] {-4, -4});
+        assertTrue(grown.isRemoved(1));
+        assertFalse(grown.isRemoved(4));
+
+        assertEquals(5, grown.without("t0").size());
+        TemplateStore compacted = grown.without("t0").without("t2");
+        assertEquals(2, compacted.size());
+        assertEquals(2, compacted.liveCount());
+        assertEquals("t3", compacted.get(0).getName());
+        assertEquals("t4", compacted.get(1).getName());
+        assertEquals(0, compacted.get(0).getSlot());
+        assertIterableEquals(kept.getPoints(), compacted.get(0).getPoints());
+        assertEquals(grown.magnitude(4), compacted.magnitude(1));
+        assertEquals(3, grown.get(3).getSlot());
+
+        TemplateStore churned = new TemplateStore(2);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1000; i++) {
+                churned = churned.withTemplate("t" + i, new double[] {i, i}, new double[] {i, i});
+            }
+            assertTrue(churned.capacity() >= 1000);
+            for (int i = 0; i < 1000; i++) {
+                churned = churned.without("t" + i);
+            }
+            assertEquals(0, churned.liveCount());
+            assertEquals(baseline, churned.capacity());
+        }
+
+        // replacing each template in turn, like Recognizer.replaceTemplate, must not keep the arrays it outgrows
+        TemplateStore replaced = new TemplateStore(2);
+        for (int i = 0; i < 100; i++) {
+            replaced = replaced.withTemplate("t" + i, new double[] {i, i}, new double[] {i, i});
+        }
+        List<WeakReference<double[]>> outgrown = new ArrayList<>();
+        outgrown.add(new WeakReference<>(replaced.xs()));
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                TemplateStore remaining = replaced.without("t" + i);
+                replaced = remaining.withTemplate("t" + i, new double[] {round, i}, new double[] {i, i});
+                for (TemplateStore step : List.of(remaining, replaced)) {
+                    if (step.xs() != outgrown.get(outgrown.size() - 1).get()) {
+                        outgrown.add(new WeakReference<>(step.xs()));
+                    }
+                }
+            }
+        }
+        assertEquals(100, replaced.liveCount());
+        assertTrue(replaced.capacity() <= 400);
+        assertTrue(outgrown.size() > 2);
+        for (WeakReference<double[]> arrays : outgrown.subList(0, outgrown.size() - 1)) {
+            assertCollected(arrays);
+        }
+        assertSame(replaced.xs(), outgrown.get(outgrown.size() - 1).get());
+   }
+
+   /**
+    * Tests that a store only keeps its templates at the coarse levels once asked to, and keeps them up to date as it
+    * grows into new arrays and is compacted
+    */
+   @Test
+   public void testTemplateStoreCoarseLevels(){
+        TemplateStore store = new TemplateStore(16);
+        for (int i = 0; i < 10; i++) {
+            store = store.withTemplate("t" + i, ramp(16, i), ramp(16, -i));
+        }
+        assertFalse(store.hasCoarseLevels());
+        assertSame(store, store.withoutCoarseLevels());
+        TemplateStore coarse = store.withCoarseLevels();
+        assertTrue(coarse.hasCoarseLevels());
+        assertSame(coarse, coarse.withCoarseLevels());
+        for (int i = 10; i < 40; i++) {
+            coarse = coarse.withTemplate("t" + i, ramp(16, i), ramp(16, -i));
+        }
+        for (int i = 0; i < 40; i += 2) {
+            coarse = coarse.without("t" + i);
+        }
+        assertEquals(20, coarse.size());
+        assertTrue(coarse.hasCoarseLevels());
+        assertFalse(coarse.withoutCoarseLevels().hasCoarseLevels());
+        for (int slot = 0; slot < coarse.size(); slot++) {
+            for (int level = 0; level < TemplateStore.COARSE_SIZES.length; level++) {
+                int m = TemplateStore.COARSE_SIZES[level];
+                double[] xs = new double[m];
+                double[] ys = new double[m];
+                TemplateStore.subsample(coarse.xs(), coarse.ys(), coarse.offset(slot), 16, xs, ys, 0, m);
+                assertArrayEquals(xs, Arrays.copyOfRange(coarse.coarseXs(level), slot*m, (slot + 1)*m), 0);
+                assertArrayEquals(ys, Arrays.copyOfRange(coarse.coarseYs(level), slot*m, (slot + 1)*m), 0);
+            }
+        }
+   }
+
+   /**
+    * @return n coordinates starting at 100 times start and going up by 1
+    */
+   private static double[] ramp(int n, int start){
+        double[] coordinates = new double[n];
+        for (int i = 0; i < n; i++) {
+            coordinates[i] = 100*start + i;
+        }
+        return coordinates;
+   }
+
+   /**
+    * Tests that the cascade finds the same template as the full scan for slightly varied templates, only compares
+    * its candidates in full, and falls back to the full scan when the library is too small to narrow down
+    */
+   @Test
+   public void testCascade(){
+        Random random = new Random(19);
+        List<Deque<Point>> templates = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            templates.add(randomGesture(random));
+            recognizer.addTemplate("template " + i, templates.get(i));
+        }
+        Recognizer cascading = new Recognizer();
+        for (int i = 0; i < 600; i++) {
+            cascading.addTemplate("template " + i, templates.get(i));
+        }
+        cascading.setCascade(0.05);
+        for (int i = 0; i < 600; i += 15) {
+            Deque<Point> varied = new ArrayDeque<>();
+            for (Point p : templates.get(i)) {
+                varied.add(p.rotate(0.1).scale(1.5).add(new Point(random.nextGaussian(), random.nextGaussian())));
+            }
+            BestMatch expected = recognizer.recognize(varied);
+            BestMatch actual = cascading.recognize(varied);
+            assertEquals("template " + i, actual.getTemplate().getName());
+            assertEquals(expected.getScore(), actual.getScore());
+        }
+
+        cascading.setMetrics(new RecognizerMetrics());
+        cascading.recognize(templates.get(0));
+        assertEquals(30, cascading.getMetrics().snapshot().getTemplatesScanned());
+        for (int i = 1; i < 600; i++) {
+            cascading.removeTemplate("template " + i);
+        }
+        assertEquals("template 0", cascading.recognize(randomGesture(random)).getTemplate().getName());
+
+        Recognizer small = new Recognizer();
+        Recognizer smallCascading = new Recognizer();
+        smallCascading.setCascade(0.01);
+        for (int i = 0; i < 10; i++) {
+            small.addTemplate("template " + i, templates.get(i));
+            smallCascading.addTemplate("template " + i, templates.get(i));
+        }
+        recognizer.setCascade(1);
+        Recognizer full = new Recognizer();
+        for (int i = 0; i < 600; i++) {
+            full.addTemplate("template " + i, templates.get(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            assertEquals(small.recognize(gesture).getScore(), smallCascading.recognize(gesture).getScore());
+            assertEquals(full.recognize(gesture).getScore(), recognizer.recognize(gesture).getScore());
+        }
+        assertThrows(IllegalArgumentException.class, () -> cascading.setCascade(1.5));
+        assertThrows(IllegalArgumentException.class, () -> cascading.setCascade(-0.1));
+   }
+
+   /**
+    * Tests that the vantage-point tree finds the same nearest templates as sorting them all, both when built from
+    * scratch and when updated as templates are added and removed, and that a recognizer using it still picks the
+    * closest template
+    */
+   @Test
+   public void testVantagePointIndex(){
+        Random random = new Random(25);
+        Normalizer normalizer = new Normalizer(64, 200, new Point(0, 0));
+        ProcessedGesture processed = new ProcessedGesture(64);
+        TemplateStore store = new TemplateStore(64);
+        VantagePointIndex index = new VantagePointIndex(10, store);
+        for (int batch = 0; batch < 4; batch++) {
+            store = withRandomTemplates(store, batch*100, 100, random, normalizer, processed);
+            if (batch == 2) {
+                for (int i = 0; i < 100; i++) {
+                    store = store.without("template " + i);
+                }
+            }
+            index = index.updatedFor(store);
+            VantagePointIndex rebuilt = new VantagePointIndex(10, store);
+            for (int g = 0; g < 10; g++) {
+                normalizeRandomGesture(random, normalizer, processed);
+                int[] expected = nearestSlots(processed, store, 10);
+                assertArrayEquals(expected, index.candidates(processed, store));
+                assertArrayEquals(expected, rebuilt.candidates(processed, store));
+            }
+        }
+        TemplateStore compacted = store.compact();
+        assertNull(index.candidates(processed, compacted));
+        assertArrayEquals(nearestSlots(processed, compacted, 10), index.updatedFor(compacted).candidates(processed, compacted));
+
+        List<Deque<Point>> templates = new ArrayList<>();
+        Recognizer indexed = new Recognizer();
+        indexed.setVantagePointIndex(30);
+        for (int i = 0; i < 600; i++) {
+            templates.add(randomGesture(random));
+            recognizer.addTemplate("template " + i, templates.get(i));
+            indexed.addTemplate("template " + i, templates.get(i));
+        }
+        for (int i = 0; i < 600; i += 15) {
+            Deque<Point> varied = new ArrayDeque<>();
+            for (Point p : templates.get(i)) {
+                varied.add(p.rotate(0.1).scale(1.5).add(new Point(random.nextGaussian(), random.nextGaussian())));
+            }
+            BestMatch expected = recognizer.recognize(varied);
+            BestMatch actual = indexed.recognize(varied);
+            assertEquals("template " + i, actual.getTemplate().getName());
+            assertEquals(expected.getScore(), actual.getScore());
+        }
+        indexed.setMetrics(new RecognizerMetrics());
+        indexed.recognize(templates.get(0));
+        assertEquals(30, indexed.getMetrics().snapshot().getTemplatesScanned());
+        for (int i = 1; i < 600; i++) {
+            indexed.removeTemplate("template " + i);
+        }
+        assertEquals("template 0", indexed.recognize(randomGesture(random)).getTemplate().getName());
+        assertThrows(IllegalArgumentException.class, () -> indexed.setVantagePointIndex(-1));
+   }
+
+   /**
+    * Finds the live templates with the smallest average distance between corresponding points by sorting them all
+    */
+   private static int[] nearestSlots(ProcessedGesture gesture, TemplateStore store, int k){
+        List<Integer> slots = new ArrayList<>();
+        Map<Integer, Double> distances = new HashMap<>();
+        for (int slot = 0; slot < store.size(); slot++) {
+            if (store.isRemoved(slot)) {
+                continue;
+            }
+            double sum = 0;
+            for (int i = 0; i < 64; i++) {
+                sum += Math.hypot(store.xs()[store.offset(slot) + i] - gesture.xs[i], store.ys()[store.offset(slot) + i] - gesture.ys[i]);
+            }
+            slots.add(slot);
+            distances.put(slot, sum/64);
+        }
+        slots.sort(Comparator.comparing(distances::get));
+        return slots.subList(0, k).stream().mapToInt(Integer::intValue).toArray();
+   }
+
+   /**
+    * Tests that the $P recognizer matches the recorded gestures, ignores the direction a gesture is drawn in, and
+    * finds the same template and distance as the $P greedy cloud match without early abandoning
+    */
+   @Test
+   public void testPointCloudRecognizer(){
+        PointCloudRecognizer cloudRecognizer = new PointCloudRecognizer();
+        assertNull(cloudRecognizer.recognize(originalPoints));
+        IOManager ioManager = new IOManager();
+        Deque<Point> arrow = ioManager.loadGesture("arrowTemplate.xml");
+        cloudRecognizer.addTemplate("arrow", arrow);
+        cloudRecognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals(2, cloudRecognizer.getTemplateCount());
+        assertEquals("arrow", cloudRecognizer.recognize(ioManager.loadGesture("arrowTest.xml")).getTemplate().getName());
+        assertEquals(1.0, cloudRecognizer.recognize(arrow).getScore(), 1e-9);
+        Deque<Point> reversed = new ArrayDeque<>();
+        arrow.descendingIterator().forEachRemaining(reversed::add);
+        BestMatch reversedMatch = cloudRecognizer.recognize(reversed);
+        assertEquals("arrow", reversedMatch.getTemplate().getName());
+        assertTrue(reversedMatch.getScore() > 0.95);
+
+        assertClosestClouds(new PointCloudRecognizer(), new Random(21), (points, template, minSoFar) -> {
+            double distance = Double.POSITIVE_INFINITY;
+            for (int start = 0; start < 32; start += 5) {
+                distance = Math.min(distance, Math.min(referenceCloudDistance(points, template, start),
+                        referenceCloudDistance(template, points, start)));
+            }
+            return distance;
+        }, distance -> Math.max((2 - distance)/2, 0));
+   }
+
+   /**
+    * Tests that the $Q recognizer matches the recorded gestures, ignores the direction a gesture is drawn in, and
+    * finds the same template and distance as the $Q reference match with its lookup-table lower bounds
+    */
+   @Test
+   public void testQuickPointCloudRecognizer(){
+        GestureRecognizer quickRecognizer = new QuickPointCloudRecognizer();
+        assertNull(quickRecognizer.recognize(originalPoints));
+        IOManager ioManager = new IOManager();
+        Deque<Point> arrow = ioManager.loadGesture("arrowTemplate.xml");
+        quickRecognizer.addTemplate("arrow", arrow);
+        quickRecognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals(2, quickRecognizer.getTemplateCount());
+        assertEquals("arrow", quickRecognizer.recognize(ioManager.loadGesture("arrowTest.xml")).getTemplate().getName());
+        assertEquals(1.0, quickRecognizer.recognize(arrow).getScore(), 1e-9);
+        Deque<Point> reversed = new ArrayDeque<>();
+        arrow.descendingIterator().forEachRemaining(reversed::add);
+        assertEquals("arrow", quickRecognizer.recognize(reversed).getTemplate().getName());
+
+        assertClosestClouds(new QuickPointCloudRecognizer(), new Random(22), TestRecognizer::referenceQuickCloudMatch,
+                distance -> distance > 1 ? 1/distance : 1);
+   }
+
+   /**
+    * Tests that the $N recognizer matches multistroke gestures whatever order and direction their strokes are drawn
+    * in, refuses templates with too many strokes, and still matches a gesture no unistroke starts off like
+    */
+   @Test
+   public void testMultistrokeRecognizer(){
+        MultistrokeRecognizer multistrokeRecognizer = new MultistrokeRecognizer();
+        assertNull(multistrokeRecognizer.recognize(originalPoints));
+        multistrokeRecognizer.addTemplate("X", List.of(line(0, 0, 100, 100), line(100, 0, 0, 100)));
+        assertEquals(8, multistrokeRecognizer.getUnistrokeCount());
+        multistrokeRecognizer.addTemplate("=", List.of(line(0, 0, 100, 0), line(0, 40, 100, 40)));
+        Deque<Point> hook = line(50, 40, 50, 100);
+        hook.addAll(line(45, 100, 20, 100));
+        multistrokeRecognizer.addTemplate("j", List.of(hook, line(50, 10, 50, 10)));
+        assertEquals(20, multistrokeRecognizer.getUnistrokeCount());
+        IOManager ioManager = new IOManager();
+        multistrokeRecognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals(4, multistrokeRecognizer.getTemplateCount());
+        assertEquals(22, multistrokeRecognizer.getUnistrokeCount());
+
+        BestMatch match = multistrokeRecognizer.recognize(List.of(line(0, 110, 110, 0), line(110, 110, 0, 0)));
+        assertEquals("X", match.getTemplate().getName());
+        assertEquals(1.0, match.getScore(), 1e-2);
+        match = multistrokeRecognizer.recognize(List.of(line(210, 50, 10, 50), line(210, 0, 10, 0)));
+        assertEquals("=", match.getTemplate().getName());
+        assertTrue(match.getScore() > 0.9);
+        hook = line(0, 30, 0, 90);
+        hook.addAll(line(-5, 90, -30, 90));
+        assertEquals("j", multistrokeRecognizer.recognize(List.of(line(0, 0, 0, 0), hook)).getTemplate().getName());
+        Deque<Point> reversed = new ArrayDeque<>();
+        ioManager.loadGesture("circleTemplate.xml").descendingIterator().forEachRemaining(reversed::add);
+        assertEquals("circle", multistrokeRecognizer.recognize(reversed).getTemplate().getName());
 
+        List<Deque<Point>> tooManyStrokes = new ArrayList<>();
+        for (int i = 0; i <= MultistrokeRecognizer.MAX_STROKES; i++) {
+            tooManyStrokes.add(line(0, 10*i, 100, 10*i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> multistrokeRecognizer.addTemplate("lines", tooManyStrokes));
+        assertEquals(4, multistrokeRecognizer.getTemplateCount());
+
+        // no unistroke of an X starts off like a circle, so every one is compared instead
+        MultistrokeRecognizer onlyX = new MultistrokeRecognizer();
+        onlyX.addTemplate("X", List.of(line(0, 0, 100, 100), line(100, 0, 0, 100)));
+        match = onlyX.recognize(ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals("X", match.getTemplate().getName());
+        assertTrue(match.getScore() < 0.9);
+   }
+
+   /**
+    * Creates a straight stroke of 20 points
+    */
+   private static Deque<Point> line(double x1, double y1, double x2, double y2){
+        Deque<Point> line = new ArrayDeque<>();
+        for (int i = 0; i < 20; i++) {
+            line.add(new Point(x1 + (x2 - x1)*i/19, y1 + (y2 - y1)*i/19));
+        }
+        return line;
+   }
+
+   /**
+    * Tests that the DTW matcher gives the banded DTW distance from a direct reference, with and without envelopes
+    * kept in the store, never abandons a template it shouldn't, and picks the same templates as comparing in full
+    */
+   @Test
+   public void testDtwMatcher(){
+        Random random = new Random(24);
+        Normalizer normalizer = new Normalizer(64, 200, new Point(0, 0));
+        ProcessedGesture processed = new ProcessedGesture(64);
+        TemplateStore store = withRandomTemplates(new TemplateStore(64), 0, 20, random, normalizer, processed);
+        DtwMatcher matcher = new DtwMatcher();
+        DtwMatcher pointByPoint = new DtwMatcher(0);
+        DtwMatcher narrow = new DtwMatcher(3);
+        DtwMatcher wide = new DtwMatcher(12);
+        // the envelopes are worked out while comparing unless the store keeps them, and both must agree
+        TemplateStore plain = store.without("template 3").compact();
+        TemplateStore enveloped = store.withEnvelopes().without("template 3").compact();
+        assertFalse(plain.hasEnvelopes());
+        assertTrue(enveloped.hasEnvelopes());
+        for (int g = 0; g < 10; g++) {
+            normalizeRandomGesture(random, normalizer, processed);
+            List<Point> points = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                points.add(new Point(processed.xs[i], processed.ys[i]));
+            }
+            for (TemplateStore checked : List.of(plain, enveloped)) {
+                for (int slot = 0; slot < checked.size(); slot++) {
+                    List<Point> template = new ArrayList<>(checked.points(slot));
+                    double distance = referenceDtw(points, template, DtwMatcher.DEFAULT_BAND);
+                    assertEquals(distance, matcher.distance(processed, checked, slot, Double.POSITIVE_INFINITY), 1e-9);
+                    assertEquals(distance, matcher.distance(processed, checked, slot, distance), 1e-9);
+                    assertTrue(matcher.distance(processed, checked, slot, 0.9*distance) > 0.9*distance);
+                    for (DtwMatcher other : List.of(narrow, wide)) {
+                        double otherDistance = referenceDtw(points, template, other == narrow ? 3 : 12);
+                        assertEquals(otherDistance, other.distance(processed, checked, slot, Double.POSITIVE_INFINITY), 1e-9);
+                        assertTrue(other.distance(processed, checked, slot, 0.9*otherDistance) > 0.9*otherDistance);
+                    }
+                    assertEquals(recognizer.pathDistance(new ArrayDeque<>(points), checked.points(slot)),
+                            pointByPoint.distance(processed, checked, slot, Double.POSITIVE_INFINITY), 1e-9);
+                }
+            }
+        }
+
+        Recognizer dtwRecognizer = new Recognizer();
+        dtwRecognizer.setMatcher(matcher);
+        IOManager ioManager = new IOManager();
+        dtwRecognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        dtwRecognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        assertEquals("arrow", dtwRecognizer.recognize(ioManager.loadGesture("arrowTest.xml")).getTemplate().getName());
+        Recognizer exhaustiveRecognizer = new Recognizer();
+        exhaustiveRecognizer.setMatcher(exhaustive(new DtwMatcher()));
+        exhaustiveRecognizer.addTemplate("arrow", ioManager.loadGesture("arrowTemplate.xml"));
+        exhaustiveRecognizer.addTemplate("circle", ioManager.loadGesture("circleTemplate.xml"));
+        for (int batch = 0; batch < 3; batch++) {
+            for (int i = 0; i < 50; i++) {
+                Deque<Point> template = randomGesture(random);
+                dtwRecognizer.addTemplate("template " + batch + " " + i, template);
+                exhaustiveRecognizer.addTemplate("template " + batch + " " + i, template);
+            }
+            assertSameMatches(exhaustiveRecognizer, dtwRecognizer, random, 10, 1e-9);
+        }
+   }
+
+   /**
+    * Dynamic time warping over the whole cost matrix, keeping to the band, as the average distance between matched
+    * points
+    */
+   private static double referenceDtw(List<Point> a, List<Point> b, int band){
+        int n = a.size();
+        double[][] cost = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (Math.abs(i - j) > band) {
+                    cost[i][j] = Double.POSITIVE_INFINITY;
+                    continue;
+                }
+                double best = 0;
+                if (i > 0 || j > 0) {
+                    best = Math.min(i > 0 ? cost[i-1][j] : Double.POSITIVE_INFINITY,
+                            Math.min(j > 0 ? cost[i][j-1] : Double.POSITIVE_INFINITY,
+                                    i > 0 && j > 0 ? cost[i-1][j-1] : Double.POSITIVE_INFINITY));
+                }
+                cost[i][j] = best + a.get(i).distance(b.get(j));
+            }
+        }
+        return cost[n-1][n-1]/n;
+   }
+
+   /**
+    * Normalizes a gesture into a point cloud the way the $P recognizer does
+    */
+   private static List<Point> cloud(PointCloudRecognizer cloudRecognizer, Deque<Point> gesture){
+        PointBuffer original = new PointBuffer();
+        original.addAll(gesture);
+        ProcessedGesture cloud = new ProcessedGesture(32);
+        cloudRecognizer.normalize(original.xs(), original.ys(), original.size(), cloud);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            points.add(new Point(cloud.xs[i], cloud.ys[i]));
+        }
+        return points;
+   }
+
+   /**
+    * The distance between a gesture's cloud and a template's, given the smallest distance to any template so far
+    */
+   private interface CloudDistance {
+        double distance(List<Point> gesture, List<Point> template, double minSoFar);
+   }
+
+   /**
+    * Adds 200 random templates to a point-cloud recognizer and checks that it matches random gestures with the
+    * template closest by the reference distance, scored the way the recognizer scores that distance
+    */
+   private static void assertClosestClouds(GestureRecognizer cloudRecognizer, Random random, CloudDistance reference,
+                                           DoubleUnaryOperator score){
+        PointCloudRecognizer normalizer = new PointCloudRecognizer();
+        List<List<Point>> templates = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Deque<Point> template = randomGesture(random);
+            cloudRecognizer.addTemplate("template " + i, template);
+            templates.add(cloud(normalizer, template));
+        }
+        for (int g = 0; g < 10; g++) {
+            Deque<Point> gesture = randomGesture(random);
+            List<Point> points = cloud(normalizer, gesture);
+            double minDistance = Double.POSITIVE_INFINITY;
+            int closest = -1;
+            for (int t = 0; t < templates.size(); t++) {
+                double distance = reference.distance(points, templates.get(t), minDistance);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closest = t;
+                }
+            }
+            BestMatch match = cloudRecognizer.recognize(gesture);
+            assertEquals("template " + closest, match.getTemplate().getName());
+            assertEquals(score.applyAsDouble(minDistance), match.getScore(), 1e-9);
+        }
+   }
+
+   /**
+    * The cloud distance from the $P paper, written directly over lists of points
+    */
+   private static double referenceCloudDistance(List<Point> a, List<Point> b, int start){
+        int n = a.size();
+        boolean[] matched = new boolean[n];
+        double sum = 0;
+        int i = start;
+        do {
+            int index = -1;
+            double min = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                if (!matched[j] && a.get(i).distance(b.get(j)) < min) {
+                    min = a.get(i).distance(b.get(j));
+                    index = j;
+                }
+            }
+            matched[index] = true;
+            sum += (1 - ((i - start + n) % n)/(double) n)*min;
+            i = (i + 1) % n;
+        } while (i != start);
+        return sum;
+   }
+
+   /**
+    * The $Q cloud match from the paper's reference code, written directly over lists of points: start points are
+    * skipped when the lower bound from the other cloud's lookup table can't beat minSoFar
+    */
+   private static double referenceQuickCloudMatch(List<Point> a, List<Point> b, double minSoFar){
+        double[] lowerBounds1 = referenceLowerBounds(a, b, referenceLut(b));
+        double[] lowerBounds2 = referenceLowerBounds(b, a, referenceLut(a));
+        for (int start = 0, j = 0; start < a.size(); start += 5, j++) {
+            if (lowerBounds1[j] < minSoFar) {
+                minSoFar = Math.min(minSoFar, referenceSquaredCloudDistance(a, b, start));
+            }
+            if (lowerBounds2[j] < minSoFar) {
+                minSoFar = Math.min(minSoFar, referenceSquaredCloudDistance(b, a, start));
+            }
+        }
+        return minSoFar;
+   }
+
+   /**
+    * The 64 by 64 lookup table cell of a normalized coordinate, going through the paper's 0 to 1023 integer
+    * coordinates
+    */
+   private static int referenceCell(double coordinate){
+        long integer = Math.round((coordinate + 1)/2*1023);
+        return (int) Math.min(63, Math.round(integer/16.0));
+   }
+
+   /**
+    * For each lookup table cell, the index of the cloud point whose cell is closest
+    */
+   private static int[][] referenceLut(List<Point> cloud){
+        int[][] lut = new int[64][64];
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                int best = Integer.MAX_VALUE;
+                for (int i = 0; i < cloud.size(); i++) {
+                    int row = referenceCell(cloud.get(i).getX());
+                    int col = referenceCell(cloud.get(i).getY());
+                    int d = (row - x)*(row - x) + (col - y)*(col - y);
+                    if (d < best) {
+                        best = d;
+                        lut[x][y] = i;
+                    }
+                }
+            }
+        }
+        return lut;
+   }
+
+   /**
+    * The lower bound for every fifth start point, each worked out from scratch
+    */
+   private static double[] referenceLowerBounds(List<Point> a, List<Point> b, int[][] bLut){
+        int n = a.size();
+        double[] lowerBounds = new double[(n + 4)/5];
+        for (int start = 0, j = 0; start < n; start += 5, j++) {
+            for (int k = 0; k < n; k++) {
+                Point point = a.get((start + k) % n);
+                Point closest = b.get(bLut[referenceCell(point.getX())][referenceCell(point.getY())]);
+                double d = point.distance(closest);
+                lowerBounds[j] += (n - k)*d*d;
+            }
+        }
+        return lowerBounds;
+   }
+
+   /**
+    * The $Q cloud distance, which is the $P one with squared distances and weights from n down to 1
+    */
+   private static double referenceSquaredCloudDistance(List<Point> a, List<Point> b, int start){
+        int n = a.size();
+        boolean[] matched = new boolean[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            Point point = a.get((start + k) % n);
+            int index = -1;
+            double min = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n; j++) {
+                double d = point.distance(b.get(j));
+                if (!matched[j] && d*d < min) {
+                    min = d*d;
+                    index = j;
+                }
+            }
+            matched[index] = true;
+            sum += (n - k)*min;
+        }
+        return sum;
+   }
+
+   /**
+    * Wraps a matcher so that it ignores the early-abandon bound and always computes the exact distance
+    */
+   static Matcher exhaustive(Matcher matcher){
+        return new Matcher() {
+            @Override
+            public double distance(ProcessedGesture gesture, TemplateStore store, int slot, double bound, ScanCounters counters) {
+                return matcher.distance(gesture, store, slot, Double.POSITIVE_INFINITY, counters);
+            }
+
+            @Override
+            public double score(double distance, double scaleSize) {
+                return matcher.score(distance, scaleSize);
+            }
+        };
+   }
+
+   /**
+    * Checks that recognizer matches random gestures with the same templates as reference, with scores within
+    * tolerance
+    */
+   static void assertSameMatches(Recognizer reference, Recognizer recognizer, Random random, int gestures, double tolerance){
+        for (int i = 0; i < gestures; i++) {
+            Deque<Point> gesture = randomGesture(random);
+            BestMatch expected = reference.recognize(gesture);
+            BestMatch actual = recognizer.recognize(gesture);
+            assertEquals(expected.getTemplate().getName(), actual.getTemplate().getName());
+            assertEquals(expected.getScore(), actual.getScore(), tolerance);
+        }
+   }
+
+   /**
+    * Normalizes a random gesture into processed
+    */
+   private static void normalizeRandomGesture(Random random, Normalizer normalizer, ProcessedGesture processed){
+        PointBuffer gesture = new PointBuffer();
+        gesture.addAll(randomGesture(random));
+        normalizer.normalize(gesture.xs(), gesture.ys(), gesture.size(), processed);
+   }
+
+   /**
+    * Adds count normalized random templates to a store, named "template " followed by their number counting from
+    * first
+    * @return the store with the templates added
+    */
+   private static TemplateStore withRandomTemplates(TemplateStore store, int first, int count, Random random,
+                                                    Normalizer normalizer, ProcessedGesture processed){
+        for (int i = 0; i < count; i++) {
+            normalizeRandomGesture(random, normalizer, processed);
+            store = store.withTemplate("template " + (first + i), processed.xs.clone(), processed.ys.clone());
+        }
+        return store;
+   }
+
+   /**
+    * Creates a random wandering stroke
+    */
+   static Deque<Point> randomGesture(Random random){
+        Deque<Point> gesture = new ArrayDeque<>();
+        double x = 0;
+        double y = 0;
+        double heading = random.nextDouble()*2*Math.PI;
+        int n = 20 + random.nextInt(60);
+        for (int i = 0; i < n; i++) {
+            gesture.add(new Point(x, y));
+            heading += random.nextGaussian()*0.5;
+            x += Math.cos(heading)*(2 + random.nextDouble()*8);
+            y += Math.sin(heading)*(2 + random.nextDouble()*8);
+        }
+        return gesture;
+   }
+}